@@ -0,0 +1,324 @@
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Hands arriving cars to passengers waiting at a floor. Waiters register once per
+// (floor, direction) and are completed directly when a car stops there, instead of
+// every waiter polling every car. Each waiter handed a car gets a seat reserved in it, so
+// a stop never hands out more seats than the car has. A passenger assigned a car by
+// destination dispatch is only handed that car.
+public class ArrivalRegistry {
+  private static final int ANY_FLOOR = 0;
+  private final Map<Integer, Slot> slots;
+  private final Map<Elevator, OpenCar> openCars;
+  private final ReentrantLock lock;
+  private final Clock clock;
+
+  public ArrivalRegistry(Clock clock) {
+    this.clock = clock;
+    this.slots = new HashMap<>();
+    this.openCars = new IdentityHashMap<>();
+    this.lock = new ReentrantLock();
+  }
+
+  // Completes with the first car that stops at the floor heading the given way
+  public CompletableFuture<Elevator> await(int floor, Elevator.Direction direction) {
+    return await(floor, direction, ANY_FLOOR);
+  }
+
+  // As above, but only with a car that also serves the destination floor
+  public CompletableFuture<Elevator> await(int floor, Elevator.Direction direction, int destinationFloor) {
+    return await(floor, direction, destinationFloor, null);
+  }
+
+  // As above for the passenger's trip, setting their pickup time when the car is handed over
+  public CompletableFuture<Elevator> await(Passenger passenger) {
+    return await(passenger.getStartFloor(), passenger.getDirection(), passenger.getDestinationFloor(), passenger);
+  }
+
+  private CompletableFuture<Elevator> await(int floor, Elevator.Direction direction, int destinationFloor,
+      Passenger passenger) {
+    CompletableFuture<Elevator> future = new CompletableFuture<>();
+    Elevator elevator = null;
+    lock.lock();
+    try {
+      Slot slot = slot(floor, direction);
+      for (OpenCar car : slot.openCars) {
+        if (serves(car.elevator, destinationFloor) && accepts(passenger, car.elevator)
+            && car.elevator.reserveSeat()) {
+          elevator = car.elevator;
+          break;
+        }
+      }
+      if (elevator == null) {
+        slot.waiters.add(new Waiter(future, destinationFloor, passenger));
+      } else if (passenger != null) {
+        passenger.pickUp(clock.now());
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (elevator != null) {
+      future.complete(elevator);
+    }
+    return future;
+  }
+
+  public void arrived(Elevator elevator, int floor, Elevator.Direction heading) {
+    List<CompletableFuture<Elevator>> ready = new ArrayList<>();
+    lock.lock();
+    try {
+      removeOpenCar(elevator);
+      OpenCar car = new OpenCar(elevator, floor);
+      openCars.put(elevator, car);
+      if (heading != Elevator.Direction.DOWN) {
+        admit(car, slot(floor, Elevator.Direction.UP), ready);
+      }
+      if (heading != Elevator.Direction.UP) {
+        admit(car, slot(floor, Elevator.Direction.DOWN), ready);
+      }
+      // An empty car leaving the other way would only be sent back for passengers assigned
+      // to it, and two such floors on either side could keep it shuttling between them, so
+      // it takes them now and carries them the long way round
+      if (heading != Elevator.Direction.IDLE && elevator.getPassengerCount() == 0 && elevator.getReservedSeats() == 0) {
+        admitAssigned(car, slot(floor, heading == Elevator.Direction.UP ? Elevator.Direction.DOWN
+            : Elevator.Direction.UP), ready);
+      }
+    } finally {
+      lock.unlock();
+    }
+    // Complete outside the lock, dependent actions may run on this thread
+    for (CompletableFuture<Elevator> future : ready) {
+      future.complete(elevator);
+    }
+  }
+
+  // Destination of the longest waiting passenger at the floor for that direction:
+  // -1 if nobody is waiting, 0 if they have not said where they are going. Passengers
+  // assigned to a car are left out, they wait for that car rather than call again.
+  public int firstWaitingDestination(int floor, Elevator.Direction direction) {
+    lock.lock();
+    try {
+      for (Waiter waiter : slot(floor, direction).waiters) {
+        if (!waiter.future.isDone() && assignedCar(waiter) == null) {
+          return waiter.destinationFloor;
+        }
+      }
+      return -1;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // True if the car is stopped at the floor with its doors open
+  public boolean isOpenAt(Elevator elevator, int floor) {
+    lock.lock();
+    try {
+      OpenCar car = openCars.get(elevator);
+      return car != null && car.floor == floor;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Returns the floor the car is leaving if passengers assigned to it are still waiting
+  // there (it was full or leaving the other way), so it can be sent back; -1 otherwise
+  public int departed(Elevator elevator) {
+    lock.lock();
+    try {
+      OpenCar car = openCars.get(elevator);
+      removeOpenCar(elevator);
+      if (car != null && (waitsFor(slot(car.floor, Elevator.Direction.UP), elevator)
+          || waitsFor(slot(car.floor, Elevator.Direction.DOWN), elevator))) {
+        return car.floor;
+      }
+      return -1;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static boolean waitsFor(Slot slot, Elevator elevator) {
+    for (Waiter waiter : slot.waiters) {
+      if (!waiter.future.isDone() && assignedCar(waiter) == elevator) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Fails every outstanding waiter, used on shutdown
+  public void cancelAll() {
+    List<CompletableFuture<Elevator>> waiting = new ArrayList<>();
+    lock.lock();
+    try {
+      for (Slot slot : slots.values()) {
+        for (Waiter waiter : slot.waiters) {
+          waiting.add(waiter.future);
+        }
+        slot.waiters.clear();
+      }
+    } finally {
+      lock.unlock();
+    }
+    for (CompletableFuture<Elevator> future : waiting) {
+      future.cancel(false);
+    }
+  }
+
+  // Open cars and waiting passengers, for a checkpoint, slot by slot so each keeps its
+  // order. Cars are written as their index in cars and passengers as their number in ids.
+  // Waiters that gave no passenger cannot be rebuilt and are left out.
+  void save(Checkpoint.Writer out, List<Elevator> cars, Map<Passenger, Integer> ids) {
+    lock.lock();
+    try {
+      out.putInt(slots.size());
+      for (Map.Entry<Integer, Slot> entry : slots.entrySet()) {
+        Slot slot = entry.getValue();
+        out.putInt(entry.getKey()).putInt(slot.openCars.size());
+        for (OpenCar car : slot.openCars) {
+          out.putInt(cars.indexOf(car.elevator));
+        }
+        List<Passenger> waiting = new ArrayList<>();
+        for (Waiter waiter : slot.waiters) {
+          if (!waiter.future.isDone() && waiter.passenger != null) {
+            waiting.add(waiter.passenger);
+          }
+        }
+        out.putInt(waiting.size());
+        for (Passenger passenger : waiting) {
+          Integer id = ids.get(passenger);
+          if (id == null) {
+            throw new IllegalStateException("A passenger waiting at floor " + passenger.getStartFloor()
+                + " is outside the checkpoint");
+          }
+          out.putInt(id);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Reopens the cars as saved, replacing where they stood open before, and puts the waiting
+  // passengers back in line. Returns each one's new wait, in the order they queued.
+  Map<Passenger, CompletableFuture<Elevator>> restore(ByteBuffer in, List<Elevator> cars, Passenger[] passengers) {
+    Map<Passenger, CompletableFuture<Elevator>> waiting = new LinkedHashMap<>();
+    lock.lock();
+    try {
+      for (Elevator elevator : cars) {
+        removeOpenCar(elevator);
+      }
+      int count = in.getInt();
+      for (int i = 0; i < count; i++) {
+        int key = in.getInt();
+        Slot slot = slots.computeIfAbsent(key, k -> new Slot());
+        int open = in.getInt();
+        for (int j = 0; j < open; j++) {
+          Elevator elevator = cars.get(in.getInt());
+          slot.openCars.add(openCars.computeIfAbsent(elevator, e -> new OpenCar(e, key / 2)));
+        }
+        int waiters = in.getInt();
+        for (int j = 0; j < waiters; j++) {
+          Passenger passenger = passengers[in.getInt()];
+          CompletableFuture<Elevator> future = new CompletableFuture<>();
+          slot.waiters.add(new Waiter(future, passenger.getDestinationFloor(), passenger));
+          waiting.put(passenger, future);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    return waiting;
+  }
+
+  private void admit(OpenCar car, Slot slot, List<CompletableFuture<Elevator>> ready) {
+    slot.openCars.add(car);
+    Iterator<Waiter> waiters = slot.waiters.iterator();
+    while (waiters.hasNext()) {
+      Waiter waiter = waiters.next();
+      if (waiter.future.isDone()) { // drop waiters that gave up
+        waiters.remove();
+      } else if (serves(car.elevator, waiter.destinationFloor) && accepts(waiter.passenger, car.elevator)) {
+        if (!car.elevator.reserveSeat()) {
+          return; // full
+        }
+        waiters.remove();
+        if (waiter.passenger != null) {
+          waiter.passenger.pickUp(clock.now());
+        }
+        ready.add(waiter.future);
+      }
+    }
+  }
+
+  // Like admit, for the car's own assigned passengers only and without opening the car to
+  // later callers that way
+  private void admitAssigned(OpenCar car, Slot slot, List<CompletableFuture<Elevator>> ready) {
+    Iterator<Waiter> waiters = slot.waiters.iterator();
+    while (waiters.hasNext()) {
+      Waiter waiter = waiters.next();
+      if (!waiter.future.isDone() && assignedCar(waiter) == car.elevator) {
+        if (!car.elevator.reserveSeat()) {
+          return; // full
+        }
+        waiters.remove();
+        waiter.passenger.pickUp(clock.now());
+        ready.add(waiter.future);
+      }
+    }
+  }
+
+  private static boolean serves(Elevator elevator, int destinationFloor) {
+    return destinationFloor == ANY_FLOOR || elevator.serves(destinationFloor);
+  }
+
+  private static boolean accepts(Passenger passenger, Elevator elevator) {
+    return passenger == null || passenger.getAssignedCar() == null || passenger.getAssignedCar() == elevator;
+  }
+
+  private static Elevator assignedCar(Waiter waiter) {
+    return waiter.passenger == null ? null : waiter.passenger.getAssignedCar();
+  }
+
+  private void removeOpenCar(Elevator elevator) {
+    OpenCar car = openCars.remove(elevator);
+    if (car != null) {
+      slot(car.floor, Elevator.Direction.UP).openCars.remove(car);
+      slot(car.floor, Elevator.Direction.DOWN).openCars.remove(car);
+    }
+  }
+
+  private Slot slot(int floor, Elevator.Direction direction) {
+    int key = floor * 2 + (direction == Elevator.Direction.UP ? 0 : 1);
+    return slots.computeIfAbsent(key, k -> new Slot());
+  }
+
+  private static final class Slot {
+    private final Deque<Waiter> waiters = new ArrayDeque<>();
+    private final List<OpenCar> openCars = new ArrayList<>(2);
+  }
+
+  private static final class Waiter {
+    private final CompletableFuture<Elevator> future;
+    private final int destinationFloor;
+    private final Passenger passenger; // null when the caller did not say who is waiting
+
+    Waiter(CompletableFuture<Elevator> future, int destinationFloor, Passenger passenger) {
+      this.future = future;
+      this.destinationFloor = destinationFloor;
+      this.passenger = passenger;
+    }
+  }
+
+  private static final class OpenCar {
+    private final Elevator elevator;
+    private final int floor;
+
+    OpenCar(Elevator elevator, int floor) {
+      this.elevator = elevator;
+      this.floor = floor;
+    }
+  }
+}
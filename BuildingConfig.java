@@ -0,0 +1,519 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// Building topology: floor count and one CarConfig per elevator. Loaded from a
+// properties file, for example:
+//
+//   floors=60
+//   cars=24
+//   car.capacity=8              defaults for every car
+//   car.floorTravelMs=1000      every floor takes this long, unless maxSpeed is set
+//   car.doorDwellMs=1000        doors opening, open and closing at a stop
+//   car.transferMs=0            added to the dwell for each passenger getting on or off
+//   floorHeight=3.5             m, for the cars below
+//   car.maxSpeed=2.5            m/s; set for a jerk-limited drive instead of floorTravelMs,
+//   car.acceleration=1.0        with acceleration in m/s^2 and jerk in m/s^3 (see MotionModel)
+//   car.jerk=1.5
+//   passengerMass=75            kg, for the energy estimate (see EnergyModel)
+//   car.balance=0.45            share of the rated load the counterweight balances
+//   car.regeneration=0.3        share of the energy a hauling drive generates that it returns, 0 for none
+//   car.startJoules=6000        energy to bring the car up to speed at each start
+//   car.lowestFloor=1
+//   car.highestFloor=60
+//   car.13-24.capacity=12       overrides for cars 13 to 24 (cars are numbered from 1)
+//   car.13-24.lowestFloor=30
+//   car.13-24.homeFloor=30      where an idle car parks under parking=home, its lowest floor by default
+//   car.9-10.floors=1,41        served floors as a list of floors and ranges, instead of lowest/highest;
+//                               an express car runs past the floors it does not serve
+//   dispatch=eta                one of DispatchStrategy.NAMES, nearest by default
+//   energyWeight=20             for dispatch=energy, ms of passenger wait one kJ of energy is worth
+//   threads=virtual             platform (default) or virtual threads in real time
+//   log.console=false           print car movement and dispatches, true by default
+//   log.file=events.jsonl       also write every event as JSON lines to the file
+//   seed=42                     seeds tie-breaking between simultaneous hall calls, 0 by default
+//   trace.file=run.trace        record every passenger's calls to the file, for Replay
+//   parking=demand              where idle cars go, one of ParkingPolicy.NAMES, none by default
+//   zoning=banks                shared (default): one controller for all cars; banks: cars serving the
+//                               same floors form a zone with its own controller, see ZoneRouter
+public class BuildingConfig {
+  private static final String DEFAULT_CONFIG_FILE = "building.properties";
+  private static final int DEFAULT_FLOORS = 10;
+  private static final int DEFAULT_CARS = 3;
+  private static final int DEFAULT_CAPACITY = 8;
+  private static final long DEFAULT_FLOOR_TRAVEL_MS = 1000;
+  private static final long DEFAULT_DOOR_DWELL_MS = 1000;
+  private static final double DEFAULT_FLOOR_HEIGHT = 3.5;
+  private static final double DEFAULT_ACCELERATION = 1.0;
+  private static final double DEFAULT_JERK = 1.5;
+  private static final double DEFAULT_PASSENGER_MASS = 75;
+  private static final double DEFAULT_BALANCE = 0.45;
+  private static final double DEFAULT_REGENERATION = 0.3;
+  private static final double DEFAULT_START_JOULES = 6000;
+  private static final double DEFAULT_ENERGY_WEIGHT = 20;
+  private static final String DEFAULT_DISPATCH_STRATEGY = "nearest";
+  private static final String DEFAULT_PARKING = "none";
+  private static final String DEFAULT_ZONING = "shared";
+
+  private final int numFloors;
+  private final List<CarConfig> cars;
+  private final String dispatchStrategy;
+  private final ThreadMode threadMode;
+  private final boolean consoleLog;
+  private final String logFile; // null for no event file
+  private final long seed;
+  private final String traceFile; // null for no trace
+  private final String parking;
+  private final String zoning;
+  private final double energyWeight; // ms of wait per kJ, for the energy dispatch strategy
+
+  public BuildingConfig(int numFloors, List<CarConfig> cars) {
+    this(numFloors, cars, DEFAULT_DISPATCH_STRATEGY);
+  }
+
+  public BuildingConfig(int numFloors, List<CarConfig> cars, String dispatchStrategy) {
+    this(numFloors, cars, dispatchStrategy, ThreadMode.PLATFORM);
+  }
+
+  public BuildingConfig(int numFloors, List<CarConfig> cars, String dispatchStrategy, ThreadMode threadMode) {
+    this(numFloors, cars, dispatchStrategy, threadMode, true, null, 0, null, DEFAULT_PARKING, DEFAULT_ZONING,
+        DEFAULT_ENERGY_WEIGHT);
+  }
+
+  private BuildingConfig(int numFloors, List<CarConfig> cars, String dispatchStrategy, ThreadMode threadMode,
+      boolean consoleLog, String logFile, long seed, String traceFile, String parking, String zoning,
+      double energyWeight) {
+    if (numFloors < 2) {
+      throw new IllegalArgumentException("A building needs at least 2 floors, got " + numFloors);
+    }
+    if (cars.isEmpty()) {
+      throw new IllegalArgumentException("A building needs at least 1 car");
+    }
+    for (CarConfig car : cars) {
+      if (car.getHighestFloor() > numFloors) {
+        throw new IllegalArgumentException("Car serves floor " + car.getHighestFloor()
+            + " but the building has " + numFloors + " floors");
+      }
+    }
+    if (!DispatchStrategy.NAMES.contains(dispatchStrategy)) {
+      throw new IllegalArgumentException("Unknown dispatch strategy '" + dispatchStrategy
+          + "', expected one of " + DispatchStrategy.NAMES);
+    }
+    if (!ParkingPolicy.NAMES.contains(parking)) {
+      throw new IllegalArgumentException("Unknown parking policy '" + parking + "', expected one of "
+          + ParkingPolicy.NAMES);
+    }
+    if (!ZoneRouter.NAMES.contains(zoning)) {
+      throw new IllegalArgumentException("Unknown zoning '" + zoning + "', expected one of " + ZoneRouter.NAMES);
+    }
+    if (!(energyWeight >= 0)) {
+      throw new IllegalArgumentException("Energy weight cannot be negative, got " + energyWeight);
+    }
+    this.numFloors = numFloors;
+    this.cars = List.copyOf(cars);
+    this.dispatchStrategy = dispatchStrategy;
+    this.threadMode = threadMode;
+    this.consoleLog = consoleLog;
+    this.logFile = logFile;
+    this.seed = seed;
+    this.traceFile = traceFile;
+    this.parking = parking;
+    this.zoning = zoning;
+    this.energyWeight = energyWeight;
+  }
+
+  // Same building with a different dispatch strategy
+  public BuildingConfig withDispatchStrategy(String dispatchStrategy) {
+    return new BuildingConfig(numFloors, cars, dispatchStrategy, threadMode, consoleLog, logFile, seed, traceFile,
+        parking, zoning, energyWeight);
+  }
+
+  // Same building running on the given kind of threads
+  public BuildingConfig withThreadMode(ThreadMode threadMode) {
+    return new BuildingConfig(numFloors, cars, dispatchStrategy, threadMode, consoleLog, logFile, seed, traceFile,
+        parking, zoning, energyWeight);
+  }
+
+  // Same building with the event log sent to the console and/or a JSON-lines file (null for none)
+  public BuildingConfig withEventLog(boolean consoleLog, String logFile) {
+    return new BuildingConfig(numFloors, cars, dispatchStrategy, threadMode, consoleLog, logFile, seed, traceFile,
+        parking, zoning, energyWeight);
+  }
+
+  // Same building with a different tie-breaking seed
+  public BuildingConfig withSeed(long seed) {
+    return new BuildingConfig(numFloors, cars, dispatchStrategy, threadMode, consoleLog, logFile, seed, traceFile,
+        parking, zoning, energyWeight);
+  }
+
+  // Same building recording its passengers' calls to the file (null for none)
+  public BuildingConfig withTraceFile(String traceFile) {
+    return new BuildingConfig(numFloors, cars, dispatchStrategy, threadMode, consoleLog, logFile, seed, traceFile,
+        parking, zoning, energyWeight);
+  }
+
+  // Same building with a different parking policy for idle cars
+  public BuildingConfig withParking(String parking) {
+    return new BuildingConfig(numFloors, cars, dispatchStrategy, threadMode, consoleLog, logFile, seed, traceFile,
+        parking, zoning, energyWeight);
+  }
+
+  // Same building with a different zoning
+  public BuildingConfig withZoning(String zoning) {
+    return new BuildingConfig(numFloors, cars, dispatchStrategy, threadMode, consoleLog, logFile, seed, traceFile,
+        parking, zoning, energyWeight);
+  }
+
+  // Same building trading passenger wait against energy at a different rate
+  public BuildingConfig withEnergyWeight(double energyWeight) {
+    return new BuildingConfig(numFloors, cars, dispatchStrategy, threadMode, consoleLog, logFile, seed, traceFile,
+        parking, zoning, energyWeight);
+  }
+
+  // The same settings for a subset of the cars, as one zone's controller is configured
+  BuildingConfig withCars(List<CarConfig> cars) {
+    return new BuildingConfig(numFloors, cars, dispatchStrategy, threadMode, consoleLog, logFile, seed, traceFile,
+        parking, zoning, energyWeight);
+  }
+
+  public static BuildingConfig defaults() {
+    return uniform(DEFAULT_FLOORS, DEFAULT_CARS);
+  }
+
+  // Identical cars serving every floor, with the default capacity and timings
+  public static BuildingConfig uniform(int numFloors, int numCars) {
+    List<CarConfig> cars = new ArrayList<>();
+    for (int i = 0; i < numCars; i++) {
+      cars.add(new CarConfig(DEFAULT_CAPACITY, DEFAULT_FLOOR_TRAVEL_MS, DEFAULT_DOOR_DWELL_MS, 1, numFloors));
+    }
+    return new BuildingConfig(numFloors, cars);
+  }
+
+  // Config file named by the first argument, else building.properties if present, else the defaults
+  public static BuildingConfig fromCommandLine(String[] args) throws IOException {
+    Path file = Paths.get(args.length > 0 ? args[0] : DEFAULT_CONFIG_FILE);
+    if (args.length == 0 && !Files.exists(file)) {
+      return defaults();
+    }
+    return load(file);
+  }
+
+  public static BuildingConfig load(Path file) throws IOException {
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(file)) {
+      properties.load(reader);
+    }
+    return fromProperties(properties);
+  }
+
+  public static BuildingConfig fromProperties(Properties properties) {
+    int numFloors = intValue(properties, "floors", DEFAULT_FLOORS);
+    int numCars = intValue(properties, "cars", DEFAULT_CARS);
+    double floorHeight = doubleValue(properties, "floorHeight", DEFAULT_FLOOR_HEIGHT);
+    double passengerMass = doubleValue(properties, "passengerMass", DEFAULT_PASSENGER_MASS);
+    List<CarConfig> cars = new ArrayList<>();
+    for (int car = 1; car <= numCars; car++) {
+      String floorsKey = carKey(properties, car, "floors");
+      BitSet servedFloors = properties.containsKey(floorsKey)
+          ? floorSet(floorsKey, properties.getProperty(floorsKey))
+          : CarConfig.floorRange(intValue(properties, carKey(properties, car, "lowestFloor"), 1),
+              intValue(properties, carKey(properties, car, "highestFloor"), numFloors));
+      double maxSpeed = doubleValue(properties, carKey(properties, car, "maxSpeed"), 0);
+      MotionModel motion = maxSpeed == 0
+          ? MotionModel.fixed(
+              intValue(properties, carKey(properties, car, "floorTravelMs"), (int) DEFAULT_FLOOR_TRAVEL_MS))
+          : MotionModel.jerkLimited(floorHeight, maxSpeed,
+              doubleValue(properties, carKey(properties, car, "acceleration"), DEFAULT_ACCELERATION),
+              doubleValue(properties, carKey(properties, car, "jerk"), DEFAULT_JERK));
+      int capacity = intValue(properties, carKey(properties, car, "capacity"), DEFAULT_CAPACITY);
+      EnergyModel energy = new EnergyModel(capacity, floorHeight, passengerMass,
+          doubleValue(properties, carKey(properties, car, "balance"), DEFAULT_BALANCE),
+          doubleValue(properties, carKey(properties, car, "regeneration"), DEFAULT_REGENERATION),
+          doubleValue(properties, carKey(properties, car, "startJoules"), DEFAULT_START_JOULES));
+      cars.add(new CarConfig(
+          capacity,
+          motion,
+          intValue(properties, carKey(properties, car, "doorDwellMs"), (int) DEFAULT_DOOR_DWELL_MS),
+          intValue(properties, carKey(properties, car, "transferMs"), 0),
+          energy,
+          servedFloors,
+          intValue(properties, carKey(properties, car, "homeFloor"), servedFloors.nextSetBit(0))));
+    }
+    return new BuildingConfig(numFloors, cars,
+        properties.getProperty("dispatch", DEFAULT_DISPATCH_STRATEGY).trim().toLowerCase(),
+        ThreadMode.forName(properties.getProperty("threads", "platform")),
+        Boolean.parseBoolean(properties.getProperty("log.console", "true").trim()),
+        fileName(properties, "log.file"), longValue(properties, "seed", 0), fileName(properties, "trace.file"),
+        properties.getProperty("parking", DEFAULT_PARKING).trim().toLowerCase(),
+        properties.getProperty("zoning", DEFAULT_ZONING).trim().toLowerCase(),
+        doubleValue(properties, "energyWeight", DEFAULT_ENERGY_WEIGHT));
+  }
+
+  // Floors and ranges such as "1,21-40"
+  private static BitSet floorSet(String key, String value) {
+    BitSet floors = new BitSet();
+    try {
+      for (String part : value.split(",")) {
+        String[] range = part.split("-");
+        int from = Integer.parseInt(range[0].trim());
+        int to = range.length > 1 ? Integer.parseInt(range[1].trim()) : from;
+        if (range.length > 2 || from < 1 || to < from) {
+          throw new IllegalArgumentException("Invalid floor list for " + key + ": " + value);
+        }
+        floors.set(from, to + 1);
+      }
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid floor list for " + key + ": " + value);
+    }
+    return floors;
+  }
+
+  private static String fileName(Properties properties, String key) {
+    String value = properties.getProperty(key);
+    return value == null || value.isBlank() ? null : value.trim();
+  }
+
+  // Most specific key that is set: car.N.key, then a car.A-B.key range containing N, then car.key
+  private static String carKey(Properties properties, int car, String key) {
+    String single = "car." + car + "." + key;
+    if (properties.containsKey(single)) {
+      return single;
+    }
+    for (String name : properties.stringPropertyNames()) {
+      String[] parts = name.split("\\.");
+      if (parts.length != 3 || !parts[0].equals("car") || !parts[2].equals(key)) {
+        continue;
+      }
+      // Every car.N.key and car.A-B.key is checked, so a typo fails rather than being ignored
+      String[] range = parts[1].split("-", -1);
+      int from;
+      int to;
+      try {
+        from = Integer.parseInt(range[0].trim());
+        to = range.length > 1 ? Integer.parseInt(range[1].trim()) : from;
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid car number or range in " + name + ": " + parts[1]);
+      }
+      if (range.length > 2 || from < 1 || to < from) {
+        throw new IllegalArgumentException("Invalid car number or range in " + name + ": " + parts[1]);
+      }
+      if (range.length == 2 && car >= from && car <= to) {
+        return name;
+      }
+    }
+    return "car." + key;
+  }
+
+  private static long longValue(Properties properties, String key, long defaultValue) {
+    String value = properties.getProperty(key);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid number for " + key + ": " + value);
+    }
+  }
+
+  private static double doubleValue(Properties properties, String key, double defaultValue) {
+    String value = properties.getProperty(key);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid number for " + key + ": " + value);
+    }
+  }
+
+  private static int intValue(Properties properties, String key, int defaultValue) {
+    String value = properties.getProperty(key);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid number for " + key + ": " + value);
+    }
+  }
+
+  public int getNumFloors() {
+    return numFloors;
+  }
+
+  public int getNumCars() {
+    return cars.size();
+  }
+
+  public List<CarConfig> getCars() {
+    return cars;
+  }
+
+  public String getDispatchStrategy() {
+    return dispatchStrategy;
+  }
+
+  public ThreadMode getThreadMode() {
+    return threadMode;
+  }
+
+  public boolean isConsoleLog() {
+    return consoleLog;
+  }
+
+  public String getLogFile() {
+    return logFile;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  public String getTraceFile() {
+    return traceFile;
+  }
+
+  public String getParking() {
+    return parking;
+  }
+
+  public String getZoning() {
+    return zoning;
+  }
+
+  public double getEnergyWeight() {
+    return energyWeight;
+  }
+
+  // Largest capacity of any car, for sizing displays
+  public int getMaxCapacity() {
+    int max = 0;
+    for (CarConfig car : cars) {
+      max = Math.max(max, car.getCapacity());
+    }
+    return max;
+  }
+
+  public static class CarConfig {
+    private final int capacity;
+    private final MotionModel motion;
+    private final long doorDwellMs;
+    private final long transferMs; // extra dwell per passenger boarding or alighting
+    private final EnergyModel energy;
+    private final BitSet servedFloors;
+    private final int lowestFloor;
+    private final int highestFloor;
+    private final int homeFloor;
+
+    public CarConfig(int capacity, long floorTravelMs, long doorDwellMs, int lowestFloor, int highestFloor) {
+      this(capacity, floorTravelMs, doorDwellMs, lowestFloor, highestFloor, lowestFloor);
+    }
+
+    public CarConfig(int capacity, long floorTravelMs, long doorDwellMs, int lowestFloor, int highestFloor,
+        int homeFloor) {
+      this(capacity, floorTravelMs, doorDwellMs, floorRange(lowestFloor, highestFloor), homeFloor);
+    }
+
+    // A car serving any set of floors, such as a shuttle between the lobby and a sky lobby
+    public CarConfig(int capacity, long floorTravelMs, long doorDwellMs, BitSet servedFloors, int homeFloor) {
+      this(capacity, MotionModel.fixed(floorTravelMs), doorDwellMs, 0, servedFloors, homeFloor);
+    }
+
+    // As above with a motion model and per-passenger dwell, see MotionModel and getDwellMs
+    public CarConfig(int capacity, MotionModel motion, long doorDwellMs, long transferMs, BitSet servedFloors,
+        int homeFloor) {
+      this(capacity, motion, doorDwellMs, transferMs, new EnergyModel(capacity, DEFAULT_FLOOR_HEIGHT,
+          DEFAULT_PASSENGER_MASS, DEFAULT_BALANCE, DEFAULT_REGENERATION, DEFAULT_START_JOULES),
+          servedFloors, homeFloor);
+    }
+
+    // As above with an energy model
+    public CarConfig(int capacity, MotionModel motion, long doorDwellMs, long transferMs, EnergyModel energy,
+        BitSet servedFloors, int homeFloor) {
+      if (capacity < 1) {
+        throw new IllegalArgumentException("Capacity must be at least 1, got " + capacity);
+      }
+      if (doorDwellMs < 0 || transferMs < 0) {
+        throw new IllegalArgumentException("Dwell and transfer times cannot be negative");
+      }
+      if (servedFloors.cardinality() < 2 || servedFloors.nextSetBit(0) < 1) {
+        throw new IllegalArgumentException("A car must serve at least 2 floors from floor 1 up, got " + servedFloors);
+      }
+      this.capacity = capacity;
+      this.motion = motion;
+      this.doorDwellMs = doorDwellMs;
+      this.transferMs = transferMs;
+      this.energy = energy;
+      this.servedFloors = (BitSet) servedFloors.clone();
+      this.lowestFloor = servedFloors.nextSetBit(0);
+      this.highestFloor = servedFloors.length() - 1;
+      if (!serves(homeFloor)) {
+        throw new IllegalArgumentException("Home floor " + homeFloor + " is not a floor the car serves");
+      }
+      this.homeFloor = homeFloor;
+    }
+
+    static BitSet floorRange(int lowestFloor, int highestFloor) {
+      if (lowestFloor < 1 || lowestFloor >= highestFloor) {
+        throw new IllegalArgumentException("Invalid served floor range " + lowestFloor + "-" + highestFloor);
+      }
+      BitSet floors = new BitSet(highestFloor + 1);
+      floors.set(lowestFloor, highestFloor + 1);
+      return floors;
+    }
+
+    public int getCapacity() {
+      return capacity;
+    }
+
+    // Per floor under a fixed motion model, otherwise a one-floor trip
+    public long getFloorTravelMs() {
+      return motion.getFloorTravelMs();
+    }
+
+    public MotionModel getMotion() {
+      return motion;
+    }
+
+    public long getDoorDwellMs() {
+      return doorDwellMs;
+    }
+
+    public long getTransferMs() {
+      return transferMs;
+    }
+
+    public EnergyModel getEnergy() {
+      return energy;
+    }
+
+    // Doors open at a stop where the given number of passengers get on or off
+    public long getDwellMs(int transfers) {
+      return doorDwellMs + transferMs * transfers;
+    }
+
+    public int getLowestFloor() {
+      return lowestFloor;
+    }
+
+    public int getHighestFloor() {
+      return highestFloor;
+    }
+
+    public int getHomeFloor() {
+      return homeFloor;
+    }
+
+    // Copy of the floors the car stops at
+    public BitSet getServedFloors() {
+      return (BitSet) servedFloors.clone();
+    }
+
+    public boolean serves(int floor) {
+      return floor >= 1 && servedFloors.get(floor);
+    }
+  }
+}
@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.BitSet;
+
+// Binary checkpoint file for a paused simulation, see Simulation.checkpoint. Each class
+// writes its own state to a Writer and reads it back from the buffer in the same order, so
+// the format is whatever they write, behind a header naming the building's layout. Written
+// with one channel write and read through a memory-mapped buffer, so a mid-day state of a
+// large tower saves and loads in milliseconds. Big-endian, the ByteBuffer default.
+public final class Checkpoint {
+  private static final int MAGIC = 0x454c5643; // "ELVC"
+  private static final int VERSION = 1;
+
+  private Checkpoint() {
+  }
+
+  // Growable buffer the classes write their state to
+  static final class Writer {
+    private ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+    private void ensure(int bytes) {
+      if (buffer.remaining() < bytes) {
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+      }
+    }
+
+    Writer putInt(int value) {
+      ensure(Integer.BYTES);
+      buffer.putInt(value);
+      return this;
+    }
+
+    Writer putLong(long value) {
+      ensure(Long.BYTES);
+      buffer.putLong(value);
+      return this;
+    }
+
+    Writer putDouble(double value) {
+      ensure(Double.BYTES);
+      buffer.putDouble(value);
+      return this;
+    }
+
+    Writer putBoolean(boolean value) {
+      ensure(1);
+      buffer.put((byte) (value ? 1 : 0));
+      return this;
+    }
+
+    Writer putBitSet(BitSet bits) {
+      long[] words = bits.toLongArray();
+      putInt(words.length);
+      ensure(words.length * Long.BYTES);
+      for (long word : words) {
+        buffer.putLong(word);
+      }
+      return this;
+    }
+
+    Writer putString(String value) {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      putInt(bytes.length);
+      ensure(bytes.length);
+      buffer.put(bytes);
+      return this;
+    }
+
+    int position() {
+      return buffer.position();
+    }
+
+    // Fills in an int reserved earlier, such as a length written before its contents
+    void putInt(int position, int value) {
+      buffer.putInt(position, value);
+    }
+  }
+
+  static boolean getBoolean(ByteBuffer in) {
+    return in.get() != 0;
+  }
+
+  static BitSet getBitSet(ByteBuffer in) {
+    long[] words = new long[in.getInt()];
+    for (int i = 0; i < words.length; i++) {
+      words[i] = in.getLong();
+    }
+    return BitSet.valueOf(words);
+  }
+
+  static String getString(ByteBuffer in) {
+    byte[] bytes = new byte[in.getInt()];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  // Header naming the building the state belongs to: its floors, and each car's capacity
+  // and served floors. Settings that do not change the layout, such as the dispatch strategy
+  // or parking policy, may differ on restore, which is how what-if runs fork.
+  static void writeHeader(Writer out, BuildingConfig config) {
+    out.putInt(MAGIC).putInt(VERSION).putInt(config.getNumFloors()).putInt(config.getNumCars());
+    out.putString(config.getZoning());
+    for (BuildingConfig.CarConfig car : config.getCars()) {
+      out.putInt(car.getCapacity()).putBitSet(car.getServedFloors());
+    }
+  }
+
+  static void checkHeader(ByteBuffer in, BuildingConfig config, Path file) {
+    if (in.remaining() < 2 * Integer.BYTES || in.getInt() != MAGIC) {
+      throw new IllegalArgumentException(file + " is not an elevator checkpoint");
+    }
+    int version = in.getInt();
+    if (version != VERSION) {
+      throw new IllegalArgumentException(file + " is checkpoint version " + version + ", expected " + VERSION);
+    }
+    int floors = in.getInt();
+    int cars = in.getInt();
+    String zoning = getString(in);
+    if (floors != config.getNumFloors() || cars != config.getNumCars() || !zoning.equals(config.getZoning())) {
+      throw new IllegalArgumentException(file + " holds " + floors + " floors and " + cars + " cars zoned "
+          + zoning + ", the config has " + config.getNumFloors() + " floors and " + config.getNumCars()
+          + " cars zoned " + config.getZoning());
+    }
+    for (BuildingConfig.CarConfig car : config.getCars()) {
+      int capacity = in.getInt();
+      BitSet served = getBitSet(in);
+      if (capacity != car.getCapacity() || !served.equals(car.getServedFloors())) {
+        throw new IllegalArgumentException(file + " holds a car of capacity " + capacity + " serving " + served
+            + " where the config has capacity " + car.getCapacity() + " serving " + car.getServedFloors());
+      }
+    }
+  }
+
+  static void write(Writer out, Path file) throws IOException {
+    ByteBuffer buffer = out.buffer.duplicate().flip();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+
+  static ByteBuffer read(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+}
@@ -0,0 +1,4 @@
+public interface Clock {
+  // Current time in milliseconds. Only differences between readings are meaningful.
+  long now();
+}
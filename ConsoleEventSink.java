@@ -0,0 +1,41 @@
+import java.io.PrintStream;
+
+// The original human-readable console output: car movement, doors and dispatches.
+// Passenger events are left out to keep the console readable.
+public class ConsoleEventSink implements EventSink {
+  private final PrintStream out;
+
+  public ConsoleEventSink(PrintStream out) {
+    this.out = out;
+  }
+
+  @Override
+  public void write(long time, EventType type, int car, int floor, int detail) {
+    switch (type) {
+      case CAR_MOVED:
+        out.println("Elevator " + car + " is at floor " + floor + " going " + type.formatDetail(detail));
+        break;
+      case DOORS_OPENED:
+        out.println("Elevator " + car + " doors open at floor " + floor);
+        break;
+      case DOORS_CLOSED:
+        out.println("Elevator " + car + " doors closed at floor " + floor);
+        break;
+      case REQUEST_DISPATCHED:
+        out.println("Dispatched Elevator " + car + " to floor " + floor + " (direction: " + type.formatDetail(detail) + ")");
+        break;
+      default:
+        break;
+    }
+  }
+
+  @Override
+  public void flush() {
+    out.flush();
+  }
+
+  @Override
+  public void close() {
+    out.flush();
+  }
+}
@@ -0,0 +1,94 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Where hall calls come from by time of day. Calls are counted per floor in 15-minute slots
+// of a 24-hour day, starting at time 0 of the controller's clock. A slot's counts are halved
+// each time it is reused on a later day, so recent days outweigh older ones. Not thread-safe:
+// the controller records and predicts under its own lock.
+public class DemandHistogram {
+  private static final long DAY_MS = 24 * 3_600_000L;
+  private static final long SLOT_MS = 15 * 60_000L;
+  private static final int SLOTS = (int) (DAY_MS / SLOT_MS);
+  private static final double DAILY_DECAY = 0.5;
+  // Weight of the slots around the one being predicted, by distance from it
+  private static final double[] NEIGHBOUR_WEIGHTS = {1, 0.5, 0.25};
+
+  private final double[][] counts; // [slot][floor]
+  private final long[] lastDay; // day each slot was last recorded in, -1 before the first call
+
+  public DemandHistogram(int numFloors) {
+    this.counts = new double[SLOTS][numFloors + 1];
+    this.lastDay = new long[SLOTS];
+    Arrays.fill(lastDay, -1);
+  }
+
+  public void record(int floor, long time) {
+    int slot = slot(time);
+    long day = time / DAY_MS;
+    if (lastDay[slot] >= 0 && lastDay[slot] < day) {
+      double decay = Math.pow(DAILY_DECAY, day - lastDay[slot]);
+      for (int f = 0; f < counts[slot].length; f++) {
+        counts[slot][f] *= decay;
+      }
+    }
+    lastDay[slot] = day;
+    counts[slot][floor]++;
+  }
+
+  // Expected share of calls from each floor around the given time, indexed by floor;
+  // all zero before anything has been recorded
+  public double[] predict(long time) {
+    int slot = slot(time);
+    int numFloors = counts[0].length - 1;
+    double[] demand = new double[numFloors + 1];
+    double total = 0;
+    int reach = NEIGHBOUR_WEIGHTS.length - 1;
+    for (int offset = -reach; offset <= reach; offset++) {
+      double weight = NEIGHBOUR_WEIGHTS[Math.abs(offset)];
+      double[] row = counts[Math.floorMod(slot + offset, SLOTS)];
+      for (int floor = 1; floor <= numFloors; floor++) {
+        demand[floor] += row[floor] * weight;
+        total += row[floor] * weight;
+      }
+    }
+    if (total > 0) {
+      for (int floor = 1; floor <= numFloors; floor++) {
+        demand[floor] /= total;
+      }
+    }
+    return demand;
+  }
+
+  // Slots that have been recorded in only
+  void save(Checkpoint.Writer out) {
+    int used = 0;
+    for (long day : lastDay) {
+      if (day >= 0) {
+        used++;
+      }
+    }
+    out.putInt(used);
+    for (int slot = 0; slot < SLOTS; slot++) {
+      if (lastDay[slot] >= 0) {
+        out.putInt(slot).putLong(lastDay[slot]);
+        for (double count : counts[slot]) {
+          out.putDouble(count);
+        }
+      }
+    }
+  }
+
+  void restore(ByteBuffer in) {
+    for (int used = in.getInt(); used > 0; used--) {
+      int slot = in.getInt();
+      lastDay[slot] = in.getLong();
+      for (int floor = 0; floor < counts[slot].length; floor++) {
+        counts[slot][floor] = in.getDouble();
+      }
+    }
+  }
+
+  private static int slot(long time) {
+    return (int) (Math.floorMod(time, DAY_MS) / SLOT_MS);
+  }
+}
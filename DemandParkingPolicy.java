@@ -0,0 +1,92 @@
+import java.nio.ByteBuffer;
+
+// Parks idle cars where calls are expected next, from a time-of-day histogram of past hall
+// calls. Each car in the building stands for an equal share of the expected calls. The idle
+// cars already waiting take their share from the floors nearest to them, and this car goes
+// where the remaining calls are closest on average (their weighted median floor). So in a
+// morning peak most idle cars wait at the lobby, while at quieter times they spread out over
+// the busy floors instead of staying wherever their last passenger got off. With no history
+// yet cars stay put.
+public class DemandParkingPolicy implements ParkingPolicy {
+  private final DemandHistogram histogram;
+  private final int numCars;
+
+  public DemandParkingPolicy(int numFloors, int numCars) {
+    this.histogram = new DemandHistogram(numFloors);
+    this.numCars = numCars;
+  }
+
+  @Override
+  public void recordCall(int floor, long time) {
+    histogram.record(floor, time);
+  }
+
+  @Override
+  public void save(Checkpoint.Writer out) {
+    histogram.save(out);
+  }
+
+  @Override
+  public void restore(ByteBuffer in) {
+    histogram.restore(in);
+  }
+
+  @Override
+  public int parkingFloor(Elevator elevator, ElevatorState state, int[] waiting, long now) {
+    double[] remaining = histogram.predict(now);
+    int numFloors = remaining.length - 1;
+    for (int floor = 1; floor <= numFloors; floor++) {
+      for (int car = 0; car < waiting[floor]; car++) {
+        takeShare(remaining, floor);
+      }
+    }
+    // Weighted median of what is left over the floors this car serves, ties to the nearer floor
+    BuildingConfig.CarConfig car = elevator.getConfig();
+    int best = state.floor();
+    double bestDistance = expectedDistance(remaining, best);
+    for (int floor = car.getLowestFloor(); floor <= car.getHighestFloor(); floor++) {
+      if (!car.serves(floor)) {
+        continue;
+      }
+      double distance = expectedDistance(remaining, floor);
+      if (distance < bestDistance
+          || (distance == bestDistance && Math.abs(floor - state.floor()) < Math.abs(best - state.floor()))) {
+        best = floor;
+        bestDistance = distance;
+      }
+    }
+    return best;
+  }
+
+  // One car's share of the calls, taken from the floors nearest to where it waits
+  private void takeShare(double[] remaining, int floor) {
+    double share = 1.0 / numCars;
+    for (int distance = 0; share > 0 && distance < remaining.length; distance++) {
+      share = take(remaining, floor - distance, share);
+      if (distance > 0) {
+        share = take(remaining, floor + distance, share);
+      }
+    }
+  }
+
+  private static double take(double[] remaining, int floor, double share) {
+    if (floor < 1 || floor >= remaining.length) {
+      return share;
+    }
+    double taken = Math.min(share, remaining[floor]);
+    remaining[floor] -= taken;
+    return share - taken;
+  }
+
+  private static double expectedDistance(double[] remaining, int floor) {
+    double total = 0;
+    for (int other = 1; other < remaining.length; other++) {
+      total += remaining[other] * Math.abs(other - floor);
+    }
+    return total;
+  }
+
+  public DemandHistogram getHistogram() {
+    return histogram;
+  }
+}
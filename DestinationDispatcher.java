@@ -0,0 +1,71 @@
+import java.util.*;
+
+// Car assignment for destination dispatch, where passengers key in their destination at the
+// origin floor and are told at once which car to take. A car's cost is the passenger's
+// estimated time to their destination plus the delay any new stops add for everyone already
+// riding in or assigned to the car. A car that already stops at the origin, or carries or is
+// collecting people for the same destination, adds no stop there, so trips to the same floor
+// group into the same car and each trip costs fewer stops.
+public class DestinationDispatcher {
+  // Added when the car would reach the origin heading the other way, so it is only chosen if
+  // no car can come the right way; it then picks the passenger up on its way back
+  private static final double WRONG_WAY_PENALTY = 1_000_000;
+
+  // The cheapest car for the trip, or null if no car serves both floors. states[c] is car c's
+  // snapshot with the passengers it is committed to and not yet carrying counted as reserved
+  // seats, assignedTo[c][floor] how many passengers assigned to it are going to each floor.
+  public Elevator choose(List<Elevator> elevators, ElevatorState[] states, int[][] assignedTo, int origin,
+      int destination) {
+    Elevator best = null;
+    double bestCost = Double.POSITIVE_INFINITY;
+    for (int c = 0; c < elevators.size(); c++) {
+      Elevator elevator = elevators.get(c);
+      double cost = cost(elevator, states[c], assignedTo[c], origin, destination);
+      if (cost < bestCost) {
+        best = elevator;
+        bestCost = cost;
+      }
+    }
+    return best;
+  }
+
+  // Estimated ms for the passenger to reach the destination in this car, plus the time its
+  // new stops cost the car's other passengers. POSITIVE_INFINITY if the car cannot serve both floors.
+  public double cost(Elevator elevator, ElevatorState state, int[] assignedTo, int origin, int destination) {
+    if (!elevator.serves(origin) || !elevator.serves(destination)) {
+      return Double.POSITIVE_INFINITY;
+    }
+    BuildingConfig.CarConfig car = elevator.getConfig();
+    MotionModel motion = car.getMotion();
+    long stopMs = car.getDwellMs(1);
+    int load = state.passengerCount() + state.reservedSeats();
+
+    // Ride: a run to each floor the car already stops at on the way, and a door stop there
+    int low = Math.min(origin, destination);
+    int high = Math.max(origin, destination);
+    double ride = 0;
+    int runStart = low;
+    for (int floor = low + 1; floor < high; floor++) {
+      if (state.stopsAt(floor) || assignedTo[floor] > 0) {
+        ride += motion.flightMs(floor - runStart) + stopMs;
+        runStart = floor;
+      }
+    }
+    ride += motion.flightMs(high - runStart);
+
+    // Every stop the trip adds holds up everyone in or assigned to the car
+    int newStops = (state.stopsAt(origin) ? 0 : 1)
+        + (state.stopsAt(destination) || assignedTo[destination] > 0 ? 0 : 1);
+    double delay = newStops * (double) stopMs * load;
+
+    Elevator.Direction direction = destination > origin ? Elevator.Direction.UP : Elevator.Direction.DOWN;
+    double roundTrip = 2 * motion.flightMs(car.getHighestFloor() - car.getLowestFloor());
+    double pickup = EtaDispatchStrategy.estimateMillis(state, false, origin, direction, car);
+    if (pickup == Double.POSITIVE_INFINITY) {
+      pickup = WRONG_WAY_PENALTY + roundTrip;
+    }
+    // Each full load already waiting for the car is another round trip before this one
+    pickup += load / state.capacity() * roundTrip;
+    return pickup + ride + delay;
+  }
+}
@@ -0,0 +1,32 @@
+import java.util.*;
+
+// Decides how well a car fits a hall call from a floor heading the given way. The controller
+// sends the car with the lowest finite cost; cars that cannot take the call return
+// POSITIVE_INFINITY. The call comes as plain values read from the hall-call table, so a
+// dispatch round allocates nothing per call.
+// The state is the car's snapshot taken at the start of the dispatch round, so every
+// request in the round is costed against the same view of the fleet. Cost is called for
+// every (call, car) pair, so strategies read the car's stops in place through the state's
+// stop queries rather than copying them with destinations().
+// "destination" turns on destination dispatch (ElevatorController.requestTrip and
+// DestinationDispatcher); hall calls without a destination are then dispatched by ETA.
+// "energy" adds the energy a call costs to the ETA, weighted by the config's energyWeight.
+public interface DispatchStrategy {
+  List<String> NAMES = List.of("nearest", "eta", "destination", "energy");
+
+  double cost(Elevator elevator, ElevatorState state, int floor, Elevator.Direction direction);
+
+  static DispatchStrategy forName(String name, BuildingConfig config) {
+    switch (name.trim().toLowerCase()) {
+      case "nearest":
+        return new NearestCarStrategy();
+      case "eta":
+      case "destination":
+        return new EtaDispatchStrategy();
+      case "energy":
+        return new EnergyDispatchStrategy(config.getEnergyWeight());
+      default:
+        throw new IllegalArgumentException("Unknown dispatch strategy '" + name + "', expected one of " + NAMES);
+    }
+  }
+}
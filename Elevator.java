@@ -1,154 +1,417 @@
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
-public class Elevator implements Runnable {
+public class Elevator {
   private final int id;
+  private final BuildingConfig.CarConfig config;
+  private final Scheduler scheduler;
+  private final ElevatorListener listener;
+  private final EventLog eventLog;
   private int currentFloor;
   private Direction currentDirection;
-  private final Set<Integer> destinationFloors;
-  private final List<Passenger> passengers;
+  private int runStart; // floor the car last stood at, where its current trip began
+  private int stopTransfers; // passengers getting off or handed the car at the current stop
+  private final BitSet destinationFloors; // bit per floor
+  private final List<Passenger>[] passengersByFloor; // riders bucketed by destination floor
+  private final List<Passenger> alighting; // taken off at the current stop, told once the lock is released
+  private volatile int passengerCount; // volatile so reserveSeat can read it without the lock
   private final int capacity;
+  // Seats handed to waiting passengers at the current stop who have not boarded yet. Atomic
+  // rather than under the lock, so the arrival registry can reserve while holding its own.
+  private final AtomicInteger reservedSeats = new AtomicInteger();
   private volatile boolean running;
+  private boolean parked; // no step scheduled, woken by addDestination
+  // Guards the car's mutable state. A ReentrantLock rather than the object monitor, so a
+  // virtual thread blocked on a busy car does not pin its carrier thread.
+  private final ReentrantLock lock = new ReentrantLock();
+  private volatile ElevatorState state; // replaced under the lock after every change
+  private long version;
+  private long busySince; // when the car last left the parked state
+  private long busyMillis; // time spent unparked before busySince
+  private long stops; // times the doors opened at a floor
+  private long starts; // times the car set off from rest or reversed
+  private long floorsTravelled;
+  private double energyJoules; // estimated draw from the supply, net of regeneration
+  private Direction lastMove = Direction.IDLE; // IDLE while at rest
+  private final Runnable stepEvent = this::step;
+  private final Runnable closeDoorsEvent = this::closeDoors;
+  private Runnable nextEvent; // the step or door closing scheduled, null while parked
+  private long nextEventAt;
   
   public enum Direction {
     UP, DOWN, IDLE
   }
   
-  public Elevator(int id) {
+  public Elevator(int id, BuildingConfig.CarConfig config, Scheduler scheduler, ElevatorListener listener) {
+    this(id, config, scheduler, listener, EventLog.disabled());
+  }
+  
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public Elevator(int id, BuildingConfig.CarConfig config, Scheduler scheduler, ElevatorListener listener,
+      EventLog eventLog) {
     this.id = id;
-    this.currentFloor = 1; // Start at ground floor
+    this.config = config;
+    this.scheduler = scheduler;
+    this.listener = listener;
+    this.eventLog = eventLog;
+    this.currentFloor = config.getLowestFloor(); // Start at the lowest served floor
+    this.runStart = currentFloor;
     this.currentDirection = Direction.IDLE;
-    this.destinationFloors = new TreeSet<>();
-    this.passengers = new ArrayList<>();
-    this.capacity = 8;
+    this.capacity = config.getCapacity();
+    int topFloor = config.getHighestFloor();
+    this.destinationFloors = new BitSet(topFloor + 1);
+    // Preallocated so boarding and unloading never allocate
+    this.passengersByFloor = new List[topFloor + 1];
+    for (int floor = config.getLowestFloor(); floor <= topFloor; floor++) {
+      passengersByFloor[floor] = new ArrayList<>(capacity);
+    }
+    this.alighting = new ArrayList<>(capacity);
     this.running = true;
+    this.parked = true;
+    publishState();
   }
   
-  public synchronized int getCurrentFloor() {
-    return currentFloor;
+  // Readers go through the published snapshot and never block the car
+  public ElevatorState getState() {
+    return state;
   }
   
-  public synchronized Direction getCurrentDirection() {
-    return currentDirection;
+  public int getCurrentFloor() {
+    return state.floor();
   }
   
-  public synchronized int getPassengerCount() {
-    return passengers.size();
+  public Direction getCurrentDirection() {
+    return state.direction();
   }
   
-  public synchronized boolean isFull() {
-    return passengers.size() >= capacity;
+  public int getPassengerCount() {
+    return state.passengerCount();
   }
   
-  public synchronized boolean canPickup(int floor, Direction direction) {
-    if (isFull()) {
-      return false;
-    }
-    if (currentDirection == Direction.IDLE) {
-      return false;
+  public int getCapacity() {
+    return capacity;
+  }
+  
+  public int getReservedSeats() {
+    return reservedSeats.get();
+  }
+  
+  public BuildingConfig.CarConfig getConfig() {
+    return config;
+  }
+  
+  // Copy of the floors the car will stop at
+  public BitSet getDestinations() {
+    return state.destinations();
+  }
+  
+  public boolean isFull() {
+    return state.isFull();
+  }
+  
+  public boolean canPickup(int floor, Direction direction) {
+    return state.canPickup(floor, direction);
+  }
+  
+  public void addDestination(int floor) {
+    checkFloor(floor);
+    lock.lock();
+    try {
+      destinationFloors.set(floor);
+      publishState();
+      if (parked && running) {
+        parked = false;
+        busySince = scheduler.now();
+        // The fixed model leaves at once; a real drive takes its first floor's time
+        scheduleNext(stepEvent, config.getMotion().isFixed() ? 0 : nextFloorMs());
+      }
+    } finally {
+      lock.unlock();
     }
-    // Check if elevator is going in the same direction and pickup is on the way
-    if (currentDirection == direction) {
-      if (destinationFloors.isEmpty()) {
+  }
+  
+  // Holds a seat for a passenger the car is being handed to, if one is free counting riders
+  // and earlier reservations. Released when they board or the car leaves the floor.
+  boolean reserveSeat() {
+    while (true) {
+      int reserved = reservedSeats.get();
+      if (passengerCount + reserved >= capacity) {
         return false;
       }
-      if (direction == Direction.UP) {
-        // Find the furthest destination floor going up
-        int maxDestination = currentFloor;
-        for (int dest : destinationFloors) {
-          if (dest > maxDestination) {
-            maxDestination = dest;
-          }
-        }
-        // Only pickup if the floor is between current and max destination
-        return floor >= currentFloor && floor <= maxDestination;
-      } else if (direction == Direction.DOWN) {
-        // Find the lowest destination floor going down
-        int minDestination = currentFloor;
-        for (int dest : destinationFloors) {
-          if (dest < minDestination) {
-            minDestination = dest;
-          }
-        }
-        // Only pickup if the floor is between min destination and current
-        return floor <= currentFloor && floor >= minDestination;
+      if (reservedSeats.compareAndSet(reserved, reserved + 1)) {
+        return true;
       }
     }
-    return false;
   }
   
-  public synchronized void addDestination(int floor) {
-    destinationFloors.add(floor);
+  // Boards the passenger and makes their floor a stop, atomically under the car's lock.
+  // Returns false, with nothing changed, if the car is full; the caller should call again.
+  public boolean addPassenger(Passenger passenger) {
+    int floor = passenger.getDestinationFloor();
+    checkFloor(floor);
+    lock.lock();
+    try {
+      if (passengerCount >= capacity) {
+        return false;
+      }
+      passengersByFloor[floor].add(passenger);
+      passengerCount++;
+      // The seat is counted as taken before its reservation is freed, so a concurrent
+      // reserveSeat never sees both free, and the snapshot addDestination publishes is current
+      reservedSeats.getAndUpdate(reserved -> Math.max(0, reserved - 1));
+      long now = scheduler.now();
+      passenger.board(now);
+      eventLog.log(now, EventType.PASSENGER_BOARDED, id, currentFloor, floor);
+      addDestination(floor);
+    } finally {
+      lock.unlock();
+    }
+    listener.onBoarded(this, passenger);
+    return true;
   }
   
-  public synchronized void addPassenger(Passenger passenger) {
-    if (passengers.size() < capacity) {
-      passengers.add(passenger);
-      addDestination(passenger.getDestinationFloor());
+  public void removePassenger(Passenger passenger) {
+    int floor = passenger.getDestinationFloor();
+    lock.lock();
+    try {
+      if (config.serves(floor) && passengersByFloor[floor].remove(passenger)) {
+        passengerCount--;
+        publishState();
+      }
+    } finally {
+      lock.unlock();
     }
   }
   
-  public synchronized void removePassenger(Passenger passenger) {
-    passengers.remove(passenger);
+  public boolean serves(int floor) {
+    return config.serves(floor);
   }
   
-  @Override
-  public void run() {
-    while (running) {
-      try {
-        boolean shouldMove = false;
-        synchronized (this) {
-          if (destinationFloors.isEmpty()) {
-            currentDirection = Direction.IDLE;
-          } else {
-            // Determine direction based on next destination
-            updateDirection();
-            shouldMove = true;
-          }
-        }
-        if (!shouldMove) {
-          // Sleep outside synchronized block when idle
-          Thread.sleep(100);
-          continue;
-        }
-        // Move one floor and take 1 second to travel
-        boolean stoppedAtFloor = false;
-        synchronized (this) {
-          if (currentDirection == Direction.UP) {
-            currentFloor++;
-          } else if (currentDirection == Direction.DOWN) {
-            currentFloor--;
-          }
-          System.out.println("Elevator " + id + " is at floor " + currentFloor + " going " + currentDirection);
-          // Check if we've reached a destination
-          if (destinationFloors.contains(currentFloor)) {
-            destinationFloors.remove(currentFloor);
-            stoppedAtFloor = true;
-            // Drop off passengers
-            List<Passenger> toRemove = new ArrayList<>();
-            for (Passenger p : passengers) {
-              if (p.getDestinationFloor() == currentFloor) {
-                toRemove.add(p);
-                p.arrive();
-              }
-            }
-            passengers.removeAll(toRemove);
-            // Notify waiting passengers at this floor
-            notifyAll();
-          }
-        }
-        // If stopped at a floor, pause for 1 second for boarding/alighting
-        if (stoppedAtFloor) {
-          System.out.println("Elevator " + id + " doors open at floor " + currentFloor);
-          Thread.sleep(1000);
-          System.out.println("Elevator " + id + " doors closed at floor " + currentFloor);
+  private void checkFloor(int floor) {
+    if (!config.serves(floor)) {
+      throw new IllegalArgumentException("Elevator " + id + " does not serve floor " + floor);
+    }
+  }
+  
+  // One movement step: leave for the next floor, stop there if it is a destination.
+  // Each step schedules the next one instead of sleeping, so the same code runs
+  // in real time or on a virtual clock depending on the scheduler.
+  private void step() {
+    if (!running) {
+      return;
+    }
+    boolean stoppedAtFloor;
+    boolean wentIdle = false;
+    boolean departed = false;
+    int floor;
+    Direction direction;
+    int freeSeats;
+    lock.lock();
+    try {
+      if (destinationFloors.isEmpty()) {
+        currentDirection = Direction.IDLE;
+        runStart = currentFloor;
+        lastMove = Direction.IDLE;
+        parked = true;
+        busyMillis += scheduler.now() - busySince;
+        nextEvent = null;
+        wentIdle = true;
+        publishState();
+        floor = currentFloor;
+        freeSeats = capacity - passengerCount - reservedSeats.get();
+      } else {
+        updateDirection();
+        departed = currentDirection != Direction.IDLE;
+        if (departed) {
+          reservedSeats.set(0); // anyone handed the car here who has not boarded must call again
         }
-        // Take 1 second to move between floors
-        Thread.sleep(1000);
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-        break;
+        floor = -1;
+        freeSeats = 0;
+      }
+    } finally {
+      lock.unlock();
+    }
+    // Listener callbacks run outside the lock: they take the controller's and the arrival
+    // registry's locks, which must never be acquired while holding a car's
+    if (wentIdle) {
+      // An idle car can take passengers going either way
+      listener.onArrived(this, floor, Direction.IDLE, freeSeats);
+      listener.onStateChanged(this);
+      return;
+    }
+    if (departed) {
+      // Before the car moves, so a stop the listener adds for passengers left behind counts
+      listener.onDeparted(this);
+    }
+    lock.lock();
+    try {
+      stoppedAtFloor = moveOneFloor();
+      floor = currentFloor;
+      direction = currentDirection;
+      freeSeats = capacity - passengerCount - reservedSeats.get();
+    } finally {
+      lock.unlock();
+    }
+    int alighted = 0;
+    if (stoppedAtFloor) {
+      alighted = deliverAlighted();
+      // Hand the car to passengers waiting at this floor
+      listener.onArrived(this, floor, direction, freeSeats);
+    }
+    long delay;
+    lock.lock();
+    try {
+      if (stoppedAtFloor) {
+        stopTransfers = alighted + reservedSeats.get();
+      }
+      delay = stoppedAtFloor ? config.getDwellMs(stopTransfers) : nextFloorMs();
+      nextEvent = stoppedAtFloor ? closeDoorsEvent : stepEvent;
+      nextEventAt = scheduler.now() + delay;
+    } finally {
+      lock.unlock();
+    }
+    listener.onStateChanged(this);
+    long now = scheduler.now();
+    eventLog.log(now, EventType.CAR_MOVED, id, floor, direction.ordinal());
+    // If stopped at a floor, keep the doors open for boarding/alighting
+    if (stoppedAtFloor) {
+      eventLog.log(now, EventType.DOORS_OPENED, id, floor, 0);
+      scheduler.schedule(delay, closeDoorsEvent);
+    } else {
+      scheduler.schedule(delay, stepEvent);
+    }
+  }
+
+  // Time to the next floor of the trip the car is on, from the motion model. A trip runs
+  // from where the car last stood to its next stop; if the next stop is not ahead, the car
+  // is taken to turn round where it is. Caller holds the lock.
+  private long nextFloorMs() {
+    MotionModel motion = config.getMotion();
+    if (motion.isFixed() || destinationFloors.isEmpty()) {
+      return motion.getFloorTravelMs();
+    }
+    int target = getNextDestination();
+    if (target == currentFloor) {
+      return 0; // doors open again where the car stands
+    }
+    int travelled = Math.abs(currentFloor - runStart);
+    boolean ahead = (currentDirection == Direction.IDLE || travelled == 0
+        || (target > currentFloor) == (currentFloor > runStart));
+    if (!ahead) {
+      runStart = currentFloor;
+      travelled = 0;
+    }
+    int floors = Math.max(travelled + 1, Math.abs(target - runStart));
+    return motion.floorTimeMs(travelled + 1, floors);
+  }
+
+  // Returns true if the car stops at the floor it moved to, with the riders getting off there
+  // in alighting. Caller holds the lock; step tells the listener once it is released.
+  private boolean moveOneFloor() {
+    // The direction step chose before telling the listener the car is leaving
+    if (currentDirection != Direction.IDLE) {
+      EnergyModel energy = config.getEnergy();
+      if (currentDirection != lastMove) {
+        starts++;
+        energyJoules += energy.getStartJoules();
+        lastMove = currentDirection;
       }
+      floorsTravelled++;
+      energyJoules += energy.floorJoules(passengerCount, currentDirection == Direction.UP);
+    }
+    if (currentDirection == Direction.UP) {
+      currentFloor++;
+    } else if (currentDirection == Direction.DOWN) {
+      currentFloor--;
+    }
+    // Check if we've reached a destination
+    if (!destinationFloors.get(currentFloor)) {
+      publishState();
+      return false;
     }
+    destinationFloors.clear(currentFloor);
+    stops++;
+    runStart = currentFloor;
+    lastMove = Direction.IDLE;
+    dropOffAt(currentFloor);
+    // Take the heading the car leaves in, so it is not dispatched back to this floor
+    // for the other direction while its doors are still open
+    currentDirection = headingAfterStop();
+    publishState();
+    return true;
+  }
+
+  // Unloads everyone riding to the floor into alighting, O(riders for that floor) with no
+  // allocation. Returns the number of passengers dropped off. Caller holds the lock and
+  // calls deliverAlighted once it is released.
+  int dropOffAt(int floor) {
+    List<Passenger> arriving = passengersByFloor[floor];
+    int count = arriving.size();
+    for (int i = 0; i < count; i++) {
+      alighting.add(arriving.get(i));
+    }
+    arriving.clear();
+    passengerCount -= count;
+    return count;
+  }
+
+  // Completes the arrivals of the passengers dropOffAt took off and tells the listener.
+  // Only the thread that ran dropOffAt calls this, without the lock: completing an arrival
+  // runs whatever the passenger's caller chained to it. Returns how many there were.
+  int deliverAlighted() {
+    int count = alighting.size();
+    long now = scheduler.now();
+    for (int i = 0; i < count; i++) {
+      Passenger passenger = alighting.get(i);
+      passenger.arrive(now);
+      listener.onDroppedOff(this, passenger);
+      eventLog.log(now, EventType.PASSENGER_ALIGHTED, id, passenger.getDestinationFloor(), passenger.getStartFloor());
+    }
+    alighting.clear();
+    return count;
+  }
+
+  // Swaps in a fresh snapshot. Caller holds the lock, so versions are published in order.
+  private void publishState() {
+    state = new ElevatorState(currentFloor, currentDirection, passengerCount, reservedSeats.get(), capacity,
+        (BitSet) destinationFloors.clone(), ++version);
+  }
+
+  // Direction the car will leave in after the current stop, IDLE if nothing is queued
+  private Direction headingAfterStop() {
+    if (destinationFloors.isEmpty()) {
+      return Direction.IDLE;
+    }
+    int nextFloor = getNextDestination();
+    if (nextFloor > currentFloor) {
+      return Direction.UP;
+    } else if (nextFloor < currentFloor) {
+      return Direction.DOWN;
+    }
+    return Direction.IDLE;
+  }
+
+  private void closeDoors() {
+    if (!running) {
+      return;
+    }
+    eventLog.log(scheduler.now(), EventType.DOORS_CLOSED, id, getCurrentFloor(), 0);
+    // Travel time to the next floor
+    lock.lock();
+    try {
+      scheduleNext(stepEvent, nextFloorMs());
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Caller holds the lock
+  private void scheduleNext(Runnable event, long delay) {
+    nextEvent = event;
+    nextEventAt = scheduler.now() + delay;
+    scheduler.schedule(delay, event);
   }
   
   private void updateDirection() {
@@ -168,34 +431,171 @@ public class Elevator implements Runnable {
     }
   }
   
-  private int getNextDestination() {
+  // Caller holds the lock
+  int getNextDestination() {
     if (destinationFloors.isEmpty()) {
       return currentFloor;
     }
     
     // Get the next floor in the current direction
     if (currentDirection == Direction.UP || currentDirection == Direction.IDLE) {
-      for (int floor : destinationFloors) {
-        if (floor >= currentFloor) {
-          return floor;
-        }
+      int above = destinationFloors.nextSetBit(currentFloor);
+      if (above != -1) {
+        return above;
       }
     }
     
     if (currentDirection == Direction.DOWN || currentDirection == Direction.IDLE) {
-      int maxFloor = -1;
-      for (int floor : destinationFloors) {
-        if (floor <= currentFloor && floor > maxFloor) {
-          maxFloor = floor;
-        }
-      }
-      if (maxFloor != -1) {
-        return maxFloor;
+      int below = destinationFloors.previousSetBit(currentFloor);
+      if (below != -1) {
+        return below;
       }
     }
     
     // If no floors in current direction, get any floor
-    return destinationFloors.iterator().next();
+    return destinationFloors.nextSetBit(0);
+  }
+  
+  // Time the car has spent moving or at stops, as opposed to parked, up to now
+  public long getBusyMillis(long now) {
+    lock.lock();
+    try {
+      return parked ? busyMillis : busyMillis + now - busySince;
+    } finally {
+      lock.unlock();
+    }
+  }
+  
+  public long getStopCount() {
+    lock.lock();
+    try {
+      return stops;
+    } finally {
+      lock.unlock();
+    }
+  }
+  
+  public long getStartCount() {
+    lock.lock();
+    try {
+      return starts;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public double getDistanceMetres() {
+    lock.lock();
+    try {
+      return floorsTravelled * config.getEnergy().getFloorHeight();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Estimated energy drawn since the car was created, regenerated energy credited
+  public double getEnergyJoules() {
+    lock.lock();
+    try {
+      return energyJoules;
+    } finally {
+      lock.unlock();
+    }
+  }
+  
+  // Everything the car knows, for a checkpoint. Riders are written as their numbers in ids.
+  // Call between events, with nothing else touching the car.
+  void save(Checkpoint.Writer out, Map<Passenger, Integer> ids) {
+    lock.lock();
+    try {
+      out.putInt(currentFloor).putInt(currentDirection.ordinal()).putInt(runStart).putInt(stopTransfers);
+      out.putBitSet(destinationFloors);
+      out.putInt(passengerCount);
+      for (List<Passenger> riders : passengersByFloor) {
+        if (riders != null) {
+          for (Passenger passenger : riders) {
+            Integer id = ids.get(passenger);
+            if (id == null) {
+              throw new IllegalStateException("Car " + this.id + " carries a passenger outside the checkpoint");
+            }
+            out.putInt(id);
+          }
+        }
+      }
+      out.putInt(reservedSeats.get()).putBoolean(parked).putLong(version);
+      out.putLong(busySince).putLong(busyMillis).putLong(stops).putLong(starts).putLong(floorsTravelled)
+          .putDouble(energyJoules).putInt(lastMove.ordinal());
+      out.putInt(nextEvent == null ? 0 : nextEvent == stepEvent ? 1 : 2).putLong(nextEventAt);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Puts the car back as saved, on a clock already set to the checkpoint's time, without
+  // scheduling anything yet. passengers[id] is the rider saved as id.
+  void restore(ByteBuffer in, Passenger[] passengers) {
+    lock.lock();
+    try {
+      currentFloor = in.getInt();
+      currentDirection = Direction.values()[in.getInt()];
+      runStart = in.getInt();
+      stopTransfers = in.getInt();
+      destinationFloors.clear();
+      destinationFloors.or(Checkpoint.getBitSet(in));
+      for (List<Passenger> riders : passengersByFloor) {
+        if (riders != null) {
+          riders.clear();
+        }
+      }
+      passengerCount = in.getInt();
+      for (int i = 0; i < passengerCount; i++) {
+        Passenger passenger = passengers[in.getInt()];
+        passengersByFloor[passenger.getDestinationFloor()].add(passenger);
+      }
+      reservedSeats.set(in.getInt());
+      parked = Checkpoint.getBoolean(in);
+      version = in.getLong() - 1; // publishState below brings it back to the saved version
+      busySince = in.getLong();
+      busyMillis = in.getLong();
+      stops = in.getLong();
+      starts = in.getLong();
+      floorsTravelled = in.getLong();
+      energyJoules = in.getDouble();
+      lastMove = Direction.values()[in.getInt()];
+      int event = in.getInt();
+      nextEvent = event == 0 ? null : event == 1 ? stepEvent : closeDoorsEvent;
+      nextEventAt = in.getLong();
+      publishState();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // The step or door closing the car is waiting on, null while parked. A restore puts it
+  // back on the clock with resumeEvent, in the order the checkpoint found it queued.
+  Runnable getPendingEvent() {
+    lock.lock();
+    try {
+      return nextEvent;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  void resumeEvent() {
+    lock.lock();
+    try {
+      if (nextEvent != null) {
+        scheduleNext(nextEvent, nextEventAt - scheduler.now());
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+  
+  // For package code that calls the "caller holds the lock" methods directly
+  ReentrantLock getLock() {
+    return lock;
   }
   
   public int getId() {
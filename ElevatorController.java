@@ -1,131 +1,923 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
 public class ElevatorController {
+  private static final long PARK_DELAY_MS = 5000; // idle this long before a car is repositioned
+  private static final long TIEBREAKER_MULTIPLIER = 0x5DEECE66DL;
+  private static final long TIEBREAKER_MASK = (1L << 48) - 1;
+  private final BuildingConfig config;
   private final List<Elevator> elevators;
-  private final PriorityQueue<PickupRequest> pickupQueue;
-  private final ExecutorService executorService;
+  private final int[] carIndex; // by car id, the car's position in elevators and the per-car arrays
+  private final HallCallTable calls; // hall calls waiting for a car or with one on its way
+  private final Scheduler scheduler;
+  private final DispatchStrategy strategy;
+  private final ArrivalRegistry arrivals;
+  private final ReentrantLock lock; // guards the queues and dispatch flags, never the object monitor
   private volatile boolean running;
-  
+  private boolean dispatchScheduled; // a dispatch pass is queued or running
+  private boolean dispatchDirty; // state changed since the last pass started
+  private final JourneyMetrics metrics;
+  private final EventLog eventLog;
+  // Seeded, so calls in the same millisecond queue alike every run. java.util.Random's
+  // generator, kept here so a checkpoint can save its 48-bit state and restore it directly.
+  private long tiebreakerState;
+  private final Trace trace; // null unless the config names a trace file
+  private final DestinationDispatcher tripDispatcher;
+  private final int[] tripsAssigned; // per car index, passengers assigned by requestTrip not yet on board
+  private final int[][] tripsAssignedTo; // the same passengers counted by destination floor
+  private final ParkingPolicy parkingPolicy;
+  private final int[] parkingTarget; // per car index, floor it was sent to park at, -1 if none
+  private volatile Function<Elevator, PickupRequest> workSource; // other shards' calls, see ShardedController
+  private volatile StopListener stopListener; // other shards' calls at the floor, see ShardedController
+  // A dispatch round's working arrays, allocated once and reused by every round
+  private final int[] roundSlots; // pending hall-call slots, oldest first
+  private final long[] roundSerials; // and the serial of the call each held when the round began
+  private final int[] roundDestinations;
+  private int roundPending;
+  private double[] candidateCost; // (call, car) pairs a car can take, grown as needed
+  private int[] candidateOrder; // the call's position in roundSlots
+  private int[] candidateCar;
+  private int[] candidateRank; // candidates sorted cheapest first
+  private final IntSort.Order byCost = this::compareCandidates;
+  private final boolean[] callTaken;
+  private final boolean[] carBusy;
+  private final int[] assignedOrder; // the round's pairs, at most one per car
+  private final int[] assignedCar;
+  private final int[] committedSeats; // per car index, see committedStates
+  private final ElevatorState[] roundStates; // the fleet as the round costs it
+  private final ElevatorState[] tripStates; // the same for requestTrip, which may run during a round
+
   public ElevatorController(int numElevators) {
-      this.elevators = new ArrayList<>();
-      this.pickupQueue = new PriorityQueue<>();
-      this.executorService = Executors.newFixedThreadPool(numElevators + 1); // +1 for dispatcher
-      this.running = true;
-      
-      // Create and start elevators
-      for (int i = 0; i < numElevators; i++) {
-          Elevator elevator = new Elevator(i + 1);
-          elevators.add(elevator);
-          executorService.submit(elevator);
-      }
-      
-      // Start dispatcher thread
-      executorService.submit(this::dispatchRequests);
-  }
-  
-  public synchronized void requestPickup(int floor, Elevator.Direction direction) {
-      PickupRequest request = new PickupRequest(floor, direction);
-      pickupQueue.offer(request);
-      notifyAll();
-  }
-  
+    this(BuildingConfig.uniform(BuildingConfig.defaults().getNumFloors(), numElevators));
+  }
+
+  public ElevatorController(BuildingConfig config) {
+    this(config, new RealTimeScheduler(config.getNumCars() + 1, config.getThreadMode())); // +1 for dispatcher
+  }
+
+  public ElevatorController(BuildingConfig config, Scheduler scheduler) {
+    this(config, scheduler, DispatchStrategy.forName(config.getDispatchStrategy(), config));
+  }
+
+  public ElevatorController(BuildingConfig config, Scheduler scheduler, DispatchStrategy strategy) {
+    this(config, scheduler, strategy, new ArrivalRegistry(scheduler), sequentialIds(config.getNumCars()));
+  }
+
+  // A zone's controller, its cars keeping the ids they have in the whole building's config
+  ElevatorController(BuildingConfig config, Scheduler scheduler, int[] carIds) {
+    this(config, scheduler, DispatchStrategy.forName(config.getDispatchStrategy(), config),
+        new ArrivalRegistry(scheduler), carIds);
+  }
+
+  // Shards of a ShardedController share one registry, so a car from any shard that stops
+  // at a floor is handed to the passengers waiting there. carIds gives each car's id, in
+  // the order of config's cars.
+  ElevatorController(BuildingConfig config, Scheduler scheduler, DispatchStrategy strategy, ArrivalRegistry arrivals,
+      int[] carIds) {
+    if (carIds.length != config.getNumCars()) {
+      throw new IllegalArgumentException("Expected " + config.getNumCars() + " car ids, got " + carIds.length);
+    }
+    this.config = config;
+    this.strategy = strategy;
+    this.elevators = new ArrayList<>(config.getNumCars());
+    this.carIndex = new int[Arrays.stream(carIds).max().orElse(0) + 1];
+    this.calls = new HallCallTable(config);
+    this.scheduler = scheduler;
+    this.arrivals = arrivals;
+    this.lock = new ReentrantLock();
+    this.running = true;
+    this.metrics = new JourneyMetrics(config.getNumCars(), scheduler.now());
+    this.eventLog = EventLog.forConfig(config);
+    this.tiebreakerState = (config.getSeed() ^ TIEBREAKER_MULTIPLIER) & TIEBREAKER_MASK;
+    this.trace = config.getTraceFile() == null ? null : new Trace(config.getSeed());
+    this.tripDispatcher = new DestinationDispatcher();
+    this.tripsAssigned = new int[config.getNumCars()];
+    this.tripsAssignedTo = new int[config.getNumCars()][config.getNumFloors() + 1];
+    this.parkingPolicy = ParkingPolicy.forName(config.getParking(), config);
+    this.parkingTarget = new int[config.getNumCars()];
+    Arrays.fill(parkingTarget, -1);
+    this.roundSlots = new int[calls.size()];
+    this.roundSerials = new long[calls.size()];
+    this.roundDestinations = new int[calls.size()];
+    this.candidateCost = new double[64];
+    this.candidateOrder = new int[64];
+    this.candidateCar = new int[64];
+    this.candidateRank = new int[64];
+    this.callTaken = new boolean[calls.size()];
+    this.carBusy = new boolean[config.getNumCars()];
+    this.assignedOrder = new int[config.getNumCars()];
+    this.assignedCar = new int[config.getNumCars()];
+    this.committedSeats = new int[config.getNumCars()];
+    this.roundStates = new ElevatorState[config.getNumCars()];
+    this.tripStates = new ElevatorState[config.getNumCars()];
+
+    // Create elevators, they start parked and are woken by their first destination
+    ElevatorListener listener = new ElevatorListener() {
+      @Override
+      public void onStateChanged(Elevator elevator) {
+        onElevatorStateChanged();
+        scheduleParking(elevator);
+        stealWork(elevator);
+      }
+
+      @Override
+      public void onArrived(Elevator elevator, int floor, Elevator.Direction heading, int freeSeats) {
+        arrivals.arrived(elevator, floor, heading);
+        onHallCallAnswered(elevator, floor, heading);
+        StopListener listener = stopListener;
+        if (listener != null) {
+          listener.stopped(elevator, floor, heading);
+        }
+        // Passengers the car could not take (full, or not going their way) call again
+        if (heading != Elevator.Direction.DOWN) {
+          recall(floor, Elevator.Direction.UP);
+        }
+        if (heading != Elevator.Direction.UP) {
+          recall(floor, Elevator.Direction.DOWN);
+        }
+      }
+
+      @Override
+      public void onDeparted(Elevator elevator) {
+        // Come back for assigned passengers the car could not take this time
+        int stranded = arrivals.departed(elevator);
+        if (stranded > 0) {
+          elevator.addDestination(stranded);
+        }
+      }
+
+      @Override
+      public void onBoarded(Elevator elevator, Passenger passenger) {
+        if (passenger.getAssignedCar() == elevator) {
+          tripBoarded(elevator, passenger);
+        }
+        metrics.recordBoarded(passenger);
+      }
+
+      @Override
+      public void onDroppedOff(Elevator elevator, Passenger passenger) {
+        metrics.recordDelivered(carIndex[elevator.getId()], passenger);
+        if (trace != null) {
+          trace.delivered(passenger);
+        }
+      }
+    };
+    List<BuildingConfig.CarConfig> cars = config.getCars();
+    for (int i = 0; i < cars.size(); i++) {
+      carIndex[carIds[i]] = i;
+      Elevator elevator = new Elevator(carIds[i], cars.get(i), scheduler, listener, eventLog);
+      elevators.add(elevator);
+      arrivals.arrived(elevator, elevator.getCurrentFloor(), Elevator.Direction.IDLE);
+    }
+  }
+
+  // Ids 1 to count, for a controller that runs every car in its config
+  private static int[] sequentialIds(int count) {
+    int[] ids = new int[count];
+    for (int i = 0; i < count; i++) {
+      ids[i] = i + 1;
+    }
+    return ids;
+  }
+
+  public void requestPickup(int floor, Elevator.Direction direction) {
+    requestPickup(floor, direction, 0);
+  }
+
+  // Hall call from a passenger who already knows their destination, so only cars serving
+  // both floors are sent. A destination of 0 means unknown.
+  public void requestPickup(int floor, Elevator.Direction direction, int destinationFloor) {
+    if (floor < 1 || floor > config.getNumFloors()) {
+      throw new IllegalArgumentException("Floor " + floor + " is outside 1-" + config.getNumFloors());
+    }
+    if (destinationFloor != 0) {
+      if (destinationFloor < 1 || destinationFloor > config.getNumFloors()) {
+        throw new IllegalArgumentException("Floor " + destinationFloor + " is outside 1-" + config.getNumFloors());
+      }
+      boolean ahead = direction == Elevator.Direction.UP ? destinationFloor > floor
+          : direction == Elevator.Direction.DOWN && destinationFloor < floor;
+      if (!ahead) {
+        throw new IllegalArgumentException("Floor " + destinationFloor + " cannot be reached going "
+            + direction + " from floor " + floor);
+      }
+    }
+    lock.lock();
+    try {
+      parkingPolicy.recordCall(floor, scheduler.now());
+      queuePickup(floor, direction, destinationFloor);
+    } finally {
+      lock.unlock();
+    }
+    // A call made without a destination cannot be replayed as a trip, so it is left out
+    if (trace != null && destinationFloor != 0) {
+      trace.record(scheduler.now(), floor, destinationFloor);
+    }
+  }
+
+  // Queues a hall call, or merges it into a matching one. Repeat calls from passengers a
+  // car left behind come straight here, so the parking policy counts each call once.
+  private void queuePickup(int floor, Elevator.Direction direction, int destinationFloor) {
+    lock.lock();
+    try {
+      // Merge into a hall call that is already waiting or already has a car on the way
+      int slot = calls.slot(floor, direction, destinationFloor);
+      if (calls.isOpen(slot)) {
+        calls.addCaller(slot);
+        return;
+      }
+      calls.open(slot, scheduler.now(), nextTiebreaker(), destinationFloor, 1);
+      signalDispatch();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // The same values Random.nextLong draws from the same seed. Caller holds the lock.
+  private long nextTiebreaker() {
+    long high = nextTiebreakerBits();
+    return (high << 32) + nextTiebreakerBits();
+  }
+
+  private int nextTiebreakerBits() {
+    tiebreakerState = (tiebreakerState * TIEBREAKER_MULTIPLIER + 0xBL) & TIEBREAKER_MASK;
+    return (int) (tiebreakerState >>> 16);
+  }
+
+  public boolean isDestinationDispatch() {
+    return config.getDispatchStrategy().equals("destination");
+  }
+
+  // Destination dispatch: the caller keys in both floors at the origin and is assigned a car
+  // at once. Returns the new passenger, bound to that car (getAssignedCar); wait for it with
+  // awaitElevator or waitForElevator, other cars stopping at the floor will not take them.
+  public Passenger requestTrip(int origin, int destination) {
+    Passenger passenger = new Passenger(origin, destination, scheduler.now());
+    requestTrip(passenger);
+    return passenger;
+  }
+
+  // Assigns a car to the passenger's trip and sends it to their floor. Returns the car.
+  public Elevator requestTrip(Passenger passenger) {
+    int origin = passenger.getStartFloor();
+    int destination = passenger.getDestinationFloor();
+    if (origin < 1 || origin > config.getNumFloors() || destination < 1 || destination > config.getNumFloors()
+        || origin == destination) {
+      throw new IllegalArgumentException("Invalid trip from floor " + origin + " to floor " + destination);
+    }
+    Elevator car;
+    lock.lock();
+    try {
+      parkingPolicy.recordCall(origin, scheduler.now());
+      car = tripDispatcher.choose(elevators, committedStates(tripStates), tripsAssignedTo, origin, destination);
+      if (car == null) {
+        throw new IllegalArgumentException("No car serves both floor " + origin + " and floor " + destination);
+      }
+      tripsAssigned[carIndex[car.getId()]]++;
+      tripsAssignedTo[carIndex[car.getId()]][destination]++;
+      passenger.assign(car);
+    } finally {
+      lock.unlock();
+    }
+    if (trace != null) {
+      trace.record(passenger.getRequestTime(), origin, destination);
+    }
+    sendForTrip(car, passenger);
+    long now = scheduler.now();
+    metrics.recordDispatch(now - passenger.getRequestTime());
+    eventLog.log(now, EventType.REQUEST_DISPATCHED, car.getId(), origin, passenger.getDirection().ordinal());
+    return car;
+  }
+
+  // Adds the origin as a stop unless the car is already there or on its way. A car standing
+  // at the origin either takes the passenger now or, leaving the other way, is sent back
+  // by onDeparted; stopping there again at once would only reopen the doors.
+  private void sendForTrip(Elevator car, Passenger passenger) {
+    int origin = passenger.getStartFloor();
+    if (!arrivals.isOpenAt(car, origin) && !car.getState().stopsAt(origin)) {
+      car.addDestination(origin);
+    }
+  }
+
+  private void tripBoarded(Elevator elevator, Passenger passenger) {
+    lock.lock();
+    try {
+      tripsAssigned[carIndex[elevator.getId()]]--;
+      tripsAssignedTo[carIndex[elevator.getId()]][passenger.getDestinationFloor()]--;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void recall(int floor, Elevator.Direction direction) {
+    int destinationFloor = arrivals.firstWaitingDestination(floor, direction);
+    if (destinationFloor >= 0) {
+      queuePickup(floor, direction, destinationFloor);
+    }
+  }
+
+  // A car stopped at the floor has answered the hall calls for the way it is heading. If it
+  // was sent for the other direction it has used up that stop, so the call goes back in the queue.
+  private void onHallCallAnswered(Elevator elevator, int floor, Elevator.Direction heading) {
+    lock.lock();
+    try {
+      for (int i = 0; i < calls.slotsPerFloor(); i++) {
+        int slot = calls.slotAt(floor, i);
+        int car = calls.assignedCar(slot);
+        if (car < 0) {
+          continue;
+        }
+        if (heading == Elevator.Direction.IDLE || calls.direction(slot) == heading) {
+          calls.free(slot);
+        } else if (elevators.get(car) == elevator) {
+          calls.requeue(slot);
+          signalDispatch();
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Sets where an idle car with nothing queued here looks for a call to take over
+  void setWorkSource(Function<Elevator, PickupRequest> workSource) {
+    this.workSource = workSource;
+  }
+
+  // Told, outside the controller lock, each time one of our cars stops at a floor
+  interface StopListener {
+    void stopped(Elevator car, int floor, Elevator.Direction heading);
+  }
+
+  void setStopListener(StopListener stopListener) {
+    this.stopListener = stopListener;
+  }
+
+  // A car of another controller sharing our arrival registry has stopped at the floor and
+  // boarded whoever was waiting there it could take. Frees our calls it answered: those
+  // for the way it is heading, queued or on a car's way, whose destinations it serves.
+  // Anyone it left behind calls again through its own controller. Returns the calls freed.
+  int answeredElsewhere(Elevator car, int floor, Elevator.Direction heading) {
+    lock.lock();
+    try {
+      int freed = 0;
+      for (int i = 0; i < calls.slotsPerFloor(); i++) {
+        int slot = calls.slotAt(floor, i);
+        if (!calls.isOpen(slot)
+            || (heading != Elevator.Direction.IDLE && calls.direction(slot) != heading)) {
+          continue;
+        }
+        int destination = calls.destination(slot);
+        if (destination == 0 || car.serves(destination)) {
+          calls.free(slot);
+          freed++;
+        }
+      }
+      return freed;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void stealWork(Elevator elevator) {
+    Function<Elevator, PickupRequest> source = workSource;
+    ElevatorState state = elevator.getState();
+    if (source == null || !state.isIdle() || state.hasDestinations()) {
+      return;
+    }
+    lock.lock();
+    try {
+      if (calls.hasPending()) {
+        return;
+      }
+    } finally {
+      lock.unlock();
+    }
+    // Outside our lock: the source locks the controller it takes the call from
+    PickupRequest call = source.apply(elevator);
+    if (call != null) {
+      adoptPickup(call);
+    }
+  }
+
+  // Gives up the oldest queued call the car can serve, for a shard with an idle car to
+  // take over; null if there is none. Calls already on a car's way are kept.
+  PickupRequest stealPickup(Elevator thief) {
+    lock.lock();
+    try {
+      int oldest = -1;
+      for (int slot = calls.nextPending(0); slot >= 0; slot = calls.nextPending(slot + 1)) {
+        int destination = calls.destination(slot);
+        if (thief.serves(calls.floor(slot)) && (destination == 0 || thief.serves(destination))
+            && (oldest < 0 || calls.isOlder(slot, oldest))) {
+          oldest = slot;
+        }
+      }
+      if (oldest < 0) {
+        return null;
+      }
+      PickupRequest call = calls.request(oldest);
+      calls.free(oldest);
+      return call;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Queues a call taken over from another shard, keeping its original time and callers
+  void adoptPickup(PickupRequest call) {
+    lock.lock();
+    try {
+      int slot = calls.slot(call.getFloor(), call.getDirection(), call.getDestinationFloor());
+      if (calls.isOpen(slot)) {
+        calls.merge(slot, call.getTimestamp(), call.getTiebreaker(), call.getCallerCount());
+      } else {
+        calls.open(slot, call.getTimestamp(), call.getTiebreaker(), call.getDestinationFloor(),
+            call.getCallerCount());
+      }
+      signalDispatch();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // True if at least one car stands idle with nothing to do, read from the published
+  // snapshots without locking
+  public boolean hasIdleCar() {
+    for (Elevator elevator : elevators) {
+      ElevatorState state = elevator.getState();
+      if (state.isIdle() && !state.hasDestinations()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Once a car has stood idle for PARK_DELAY_MS, lets the parking policy move it. Does
+  // nothing under parking=none, so idle cars stay at their last stop.
+  private void scheduleParking(Elevator elevator) {
+    ElevatorState state = elevator.getState();
+    if (!state.isIdle() || state.hasDestinations() || config.getParking().equals("none")) {
+      return;
+    }
+    lock.lock();
+    try {
+      parkingTarget[carIndex[elevator.getId()]] = -1; // wherever it was sent, it is done moving
+    } finally {
+      lock.unlock();
+    }
+    scheduler.schedule(PARK_DELAY_MS, new ParkTimer(elevator, state.version()));
+  }
+
+  // A car's wait before parking, its own class so a checkpoint can tell it on the clock
+  final class ParkTimer implements Runnable {
+    final Elevator elevator;
+    final long idleVersion;
+
+    ParkTimer(Elevator elevator, long idleVersion) {
+      this.elevator = elevator;
+      this.idleVersion = idleVersion;
+    }
+
+    @Override
+    public void run() {
+      park(elevator, idleVersion);
+    }
+  }
+
+  // Puts a parking wait saved by a checkpoint back on the clock
+  void resumeParking(Elevator elevator, long idleVersion, long delayMillis) {
+    scheduler.schedule(delayMillis, new ParkTimer(elevator, idleVersion));
+  }
+
+  private void park(Elevator elevator, long idleVersion) {
+    ElevatorState state = elevator.getState();
+    if (!running || state.version() != idleVersion) {
+      return; // the car has moved or taken a call since it went idle
+    }
+    int floor;
+    lock.lock();
+    try {
+      if (calls.hasPending()) {
+        return; // the dispatcher is about to want it
+      }
+      int[] waiting = new int[config.getNumFloors() + 1];
+      for (int i = 0; i < elevators.size(); i++) {
+        Elevator other = elevators.get(i);
+        ElevatorState otherState = other.getState();
+        if (other == elevator) {
+          continue;
+        }
+        if (parkingTarget[i] > 0) {
+          waiting[parkingTarget[i]]++;
+        } else if (otherState.isIdle() && !otherState.hasDestinations()) {
+          waiting[otherState.floor()]++;
+        }
+      }
+      floor = parkingPolicy.parkingFloor(elevator, state, waiting, scheduler.now());
+      if (floor == state.floor()) {
+        return;
+      }
+      parkingTarget[carIndex[elevator.getId()]] = floor;
+    } finally {
+      lock.unlock();
+    }
+    elevator.addDestination(floor);
+  }
+
+  // Called by an elevator after it moves a floor or goes idle
+  private void onElevatorStateChanged() {
+    lock.lock();
+    try {
+      if (calls.hasPending()) {
+        signalDispatch();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // Coalesces signals so at most one dispatch pass is queued or running at a time
+  private void signalDispatch() {
+    lock.lock();
+    try {
+      dispatchDirty = true;
+      if (!dispatchScheduled && running) {
+        dispatchScheduled = true;
+        scheduler.schedule(0, this::dispatchRequests);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
   private void dispatchRequests() {
     while (running) {
+      lock.lock();
       try {
-        PickupRequest request;
-        
-        synchronized (this) {
-          while (pickupQueue.isEmpty() && running) {
-              wait(50);
-          }
-          
-          if (!running) break;
-          
-          request = pickupQueue.peek();
-          if (request == null) continue;
-        }
-        
-        // Find best elevator for this request
-        Elevator bestElevator = findBestElevator(request);
-        
-        if (bestElevator != null) {
-          synchronized (this) {
-            pickupQueue.poll(); // Remove the request
+        if (!dispatchDirty) {
+          dispatchScheduled = false;
+          return;
+        }
+        dispatchDirty = false;
+      } finally {
+        lock.unlock();
+      }
+
+      int assigned = planDispatch();
+      for (int a = 0; a < assigned; a++) {
+        int slot = roundSlots[assignedOrder[a]];
+        Elevator elevator = elevators.get(assignedCar[a]);
+        long callTime;
+        lock.lock();
+        try {
+          if (!calls.assign(slot, roundSerials[assignedOrder[a]], assignedCar[a])) {
+            continue; // taken over by another shard while we planned
           }
-          
-          synchronized (bestElevator) {
-            bestElevator.addDestination(request.getFloor());
+          callTime = calls.time(slot);
+        } finally {
+          lock.unlock();
+        }
+
+        int floor = calls.floor(slot);
+        elevator.addDestination(floor);
+        long now = scheduler.now();
+        metrics.recordDispatch(now - callTime);
+        eventLog.log(now, EventType.REQUEST_DISPATCHED, elevator.getId(), floor, calls.direction(slot).ordinal());
+      }
+
+      // Cars that took a call have new costs, so run another round for what is left
+      if (assigned > 0 && assigned < roundPending) {
+        lock.lock();
+        try {
+          dispatchDirty = true;
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+  }
+
+  // Matches the pending calls to cars in one round. Every (call, car) cost is computed,
+  // then pairs are taken cheapest first, with at most one call per car per round, so a
+  // call nobody can serve no longer blocks the ones queued behind it. Costs come from one
+  // snapshot of the fleet taken up front, so cars moving mid-round cannot skew the matching.
+  // The round works on the controller's reusable arrays: the pending slots oldest first in
+  // roundSlots, and the planned pairs in assignedOrder and assignedCar, whose count it
+  // returns. One round runs at a time, see signalDispatch.
+  int planDispatch() {
+    ElevatorState[] states;
+    lock.lock();
+    try {
+      roundPending = calls.pendingSlots(roundSlots);
+      for (int i = 0; i < roundPending; i++) {
+        roundSerials[i] = calls.serial(roundSlots[i]);
+        roundDestinations[i] = calls.destination(roundSlots[i]);
+      }
+      states = committedStates(roundStates);
+    } finally {
+      lock.unlock();
+    }
+    // The slot's floor and direction are fixed by its index, so they are read without the lock
+    int candidates = 0;
+    for (int i = 0; i < roundPending; i++) {
+      int floor = calls.floor(roundSlots[i]);
+      Elevator.Direction direction = calls.direction(roundSlots[i]);
+      int destination = roundDestinations[i];
+      for (int c = 0; c < states.length; c++) {
+        Elevator elevator = elevators.get(c);
+        if (elevator.serves(floor) && (destination == 0 || elevator.serves(destination))) {
+          double cost = strategy.cost(elevator, states[c], floor, direction);
+          if (cost != Double.POSITIVE_INFINITY) {
+            if (candidates == candidateCost.length) {
+              growCandidates();
+            }
+            candidateCost[candidates] = cost;
+            candidateOrder[candidates] = i;
+            candidateCar[candidates] = c;
+            candidateRank[candidates] = candidates;
+            candidates++;
           }
-          
-          System.out.println("Dispatched Elevator " + bestElevator.getId() + 
-                           " to floor " + request.getFloor() + " (direction: " + request.getDirection() + ")");
         }
-        
-        Thread.sleep(50); // Check every 100ms
-        
-      } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-        break;
       }
     }
+    // Cheapest first; ties go to the older call, then to the lower car
+    IntSort.sort(candidateRank, candidates, byCost);
+
+    int assigned = 0;
+    Arrays.fill(carBusy, false);
+    Arrays.fill(callTaken, 0, roundPending, false);
+    for (int k = 0; k < candidates; k++) {
+      int candidate = candidateRank[k];
+      int order = candidateOrder[candidate];
+      int car = candidateCar[candidate];
+      if (!callTaken[order] && !carBusy[car]) {
+        callTaken[order] = true;
+        carBusy[car] = true;
+        assignedOrder[assigned] = order;
+        assignedCar[assigned] = car;
+        assigned++;
+      }
+    }
+    return assigned;
+  }
+
+  private int compareCandidates(int a, int b) {
+    int byCost = Double.compare(candidateCost[a], candidateCost[b]);
+    if (byCost != 0) {
+      return byCost;
+    }
+    return a - b; // candidates were added by call age, then car
+  }
+
+  private void growCandidates() {
+    int size = candidateCost.length * 2;
+    candidateCost = Arrays.copyOf(candidateCost, size);
+    candidateOrder = Arrays.copyOf(candidateOrder, size);
+    candidateCar = Arrays.copyOf(candidateCar, size);
+    candidateRank = Arrays.copyOf(candidateRank, size);
+  }
+
+  // Snapshot of every car with the seats it is already committed to counted as taken: seats
+  // handed out at its current stop, callers on the hall calls it is on its way to, and
+  // passengers assigned to it by requestTrip. A car whose committed passengers fill it
+  // is treated as full. Fills and returns states, keeping a car's entry from the last call
+  // while neither its snapshot nor its commitments have changed. Caller holds the lock.
+  private ElevatorState[] committedStates(ElevatorState[] states) {
+    Arrays.fill(committedSeats, 0);
+    for (int slot = calls.nextAssigned(0); slot >= 0; slot = calls.nextAssigned(slot + 1)) {
+      committedSeats[calls.assignedCar(slot)] += calls.callers(slot);
+    }
+    for (int c = 0; c < states.length; c++) {
+      Elevator elevator = elevators.get(c);
+      ElevatorState snapshot = elevator.getState();
+      int reserved = elevator.getReservedSeats() + committedSeats[c] + tripsAssigned[c];
+      ElevatorState last = states[c];
+      if (last == null || last.version() != snapshot.version() || last.reservedSeats() != reserved) {
+        states[c] = snapshot.withReservedSeats(reserved);
+      }
+    }
+    return states;
   }
-  private Elevator findBestElevator(PickupRequest request) {
-    Elevator bestElevator = null;
-    int minDistance = Integer.MAX_VALUE;
 
-    // First, look for elevators going in the same direction
+  // State for a checkpoint, taken between events: the cars, hall calls, trips assigned,
+  // metrics, the parking policy's history and the passengers waiting at each floor.
+  // Passengers are written as their number in ids.
+  void save(Checkpoint.Writer out, Map<Passenger, Integer> ids) {
     for (Elevator elevator : elevators) {
-      if (elevator.canPickup(request.getFloor(), request.getDirection())) {
-        int distance = Math.abs(elevator.getCurrentFloor() - request.getFloor());
-        if (distance < minDistance) {
-          minDistance = distance;
-          bestElevator = elevator;
-        }
-      }
-    }
-    
-    // If no elevator is going in the same direction, find the closest idle elevator
-    if (bestElevator == null) {
-      for (Elevator elevator : elevators) {
-        if (elevator.getCurrentDirection() == Elevator.Direction.IDLE && !elevator.isFull()) {
-          int distance = Math.abs(elevator.getCurrentFloor() - request.getFloor());
-          if (distance < minDistance) {
-            minDistance = distance;
-            bestElevator = elevator;
-          }
+      elevator.save(out, ids);
+    }
+    lock.lock();
+    try {
+      calls.save(out);
+      for (int c = 0; c < elevators.size(); c++) {
+        out.putInt(tripsAssigned[c]).putInt(parkingTarget[c]);
+        for (int count : tripsAssignedTo[c]) {
+          out.putInt(count);
         }
       }
+      out.putLong(tiebreakerState);
+      metrics.save(out);
+      // The policy's state behind its name and length, so a restore under another policy skips it
+      out.putString(config.getParking());
+      int length = out.position();
+      out.putInt(0);
+      parkingPolicy.save(out);
+      out.putInt(length, out.position() - length - Integer.BYTES);
+    } finally {
+      lock.unlock();
     }
-    
-    return bestElevator;
+    arrivals.save(out, elevators, ids);
   }
-  
-  public Elevator waitForElevator(int floor, Elevator.Direction direction) throws InterruptedException {
-    while (true) {
-      for (Elevator elevator : elevators) {
-        synchronized (elevator) {
-          if (elevator.getCurrentFloor() == floor && !elevator.isFull()) {
-            // Check if the elevator is going in the right direction or is idle
-            Elevator.Direction elevatorDir = elevator.getCurrentDirection();
-            if (elevatorDir == direction || elevatorDir == Elevator.Direction.IDLE) {
-              return elevator;
-            }
-          }
+
+  // Reads back what save wrote into this new controller, on a clock already at the
+  // checkpoint's time. The cars' next events are left to the caller, which knows the order
+  // they were queued in (see Elevator.resumeEvent); waiting passengers go back in line.
+  void restore(ByteBuffer in, Passenger[] passengers) {
+    for (Elevator elevator : elevators) {
+      elevator.restore(in, passengers);
+    }
+    lock.lock();
+    try {
+      calls.restore(in);
+      for (int c = 0; c < elevators.size(); c++) {
+        tripsAssigned[c] = in.getInt();
+        parkingTarget[c] = in.getInt();
+        for (int floor = 0; floor < tripsAssignedTo[c].length; floor++) {
+          tripsAssignedTo[c][floor] = in.getInt();
         }
       }
-      Thread.sleep(50); // Check every 100ms
+      tiebreakerState = in.getLong();
+      metrics.restore(in);
+      String parking = Checkpoint.getString(in);
+      int length = in.getInt();
+      if (parking.equals(config.getParking())) {
+        parkingPolicy.restore(in.slice(in.position(), length));
+      }
+      in.position(in.position() + length);
+    } finally {
+      lock.unlock();
     }
+    arrivals.restore(in, elevators, passengers).forEach(
+        (passenger, arrival) -> board(passenger, new CompletableFuture<>(), arrival));
+  }
+
+  public long getDispatchCount() {
+    return metrics.getDispatchLatency().getCount();
+  }
+
+  // Average time in ms from a PickupRequest being made to a car being assigned
+  public double getAverageDispatchLatencyMillis() {
+    return metrics.getDispatchLatency().getMean();
+  }
+
+  public long getMaxDispatchLatencyMillis() {
+    return metrics.getDispatchLatency().getMax();
+  }
+
+  public EventLog getEventLog() {
+    return eventLog;
   }
-  
+
+  public JourneyMetrics getMetrics() {
+    return metrics;
+  }
+
+  // Prints the metrics report every period of the controller's clock until shutdown
+  public void startMetricsReport(long periodMillis, PrintStream out) {
+    if (periodMillis <= 0) {
+      throw new IllegalArgumentException("Report period must be positive: " + periodMillis);
+    }
+    scheduler.schedule(periodMillis, () -> {
+      if (running) {
+        out.print(metrics.report(elevators, scheduler.now()));
+        startMetricsReport(periodMillis, out);
+      }
+    });
+  }
+
+  public Elevator waitForElevator(int floor, Elevator.Direction direction) throws InterruptedException {
+    return waitFor(awaitElevator(floor, direction));
+  }
+
+  public Elevator waitForElevator(int floor, Elevator.Direction direction, int destinationFloor)
+      throws InterruptedException {
+    return waitFor(awaitElevator(floor, direction, destinationFloor));
+  }
+
+  // Waits for a car that serves the passenger's trip and notes when it came for them
+  public Elevator waitForElevator(Passenger passenger) throws InterruptedException {
+    return waitFor(awaitElevator(passenger));
+  }
+
+  // Waits for a car that serves the passenger's trip and boards it. If the car fills up
+  // before they get on they call again, so this returns only once they are riding.
+  public Elevator waitToBoard(Passenger passenger) throws InterruptedException {
+    return waitFor(boardElevator(passenger));
+  }
+
+  private static Elevator waitFor(CompletableFuture<Elevator> arrival) throws InterruptedException {
+    try {
+      return arrival.get();
+    } catch (InterruptedException e) {
+      arrival.cancel(false);
+      throw e;
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Waiting for elevator failed", e.getCause());
+    }
+  }
+
+  // Completes when a car with a free seat stops at the floor heading the given way
+  public CompletableFuture<Elevator> awaitElevator(int floor, Elevator.Direction direction) {
+    return arrivals.await(floor, direction);
+  }
+
+  // As above, for a passenger who already knows their destination: skips cars that do not serve it
+  public CompletableFuture<Elevator> awaitElevator(int floor, Elevator.Direction direction, int destinationFloor) {
+    return arrivals.await(floor, direction, destinationFloor);
+  }
+
+  // As above for a passenger, whose pickup time is set as the car is handed to them, so
+  // the time until they are on board (thread wakeup included) counts as boarding
+  public CompletableFuture<Elevator> awaitElevator(Passenger passenger) {
+    CompletableFuture<Elevator> arrival = arrivals.await(passenger);
+    // An assigned car may have come and gone before the passenger started waiting
+    if (passenger.getAssignedCar() != null && !arrival.isDone()) {
+      sendForTrip(passenger.getAssignedCar(), passenger);
+    }
+    return arrival;
+  }
+
+  // Completes with the car once the passenger is on board. A passenger the car turns away
+  // because it filled up first makes a new hall call and waits for the next car; one
+  // assigned a car by requestTrip waits for that car to come back for them.
+  public CompletableFuture<Elevator> boardElevator(Passenger passenger) {
+    CompletableFuture<Elevator> boarded = new CompletableFuture<>();
+    board(passenger, boarded, awaitElevator(passenger));
+    return boarded;
+  }
+
+  private void board(Passenger passenger, CompletableFuture<Elevator> boarded, CompletableFuture<Elevator> arrival) {
+    // Cancelling the result gives up the wait
+    boarded.whenComplete((car, failure) -> {
+      if (boarded.isCancelled()) {
+        arrival.cancel(false);
+      }
+    });
+    arrival.whenComplete((elevator, failure) -> {
+      if (boarded.isDone()) {
+        return; // given up, the seat is freed when the car leaves
+      } else if (failure != null) {
+        boarded.completeExceptionally(failure);
+      } else if (elevator.addPassenger(passenger)) {
+        boarded.complete(elevator);
+      } else if (running) {
+        metrics.recordRejected();
+        eventLog.log(scheduler.now(), EventType.PASSENGER_REJECTED, elevator.getId(), passenger.getStartFloor(),
+            passenger.getDestinationFloor());
+        CompletableFuture<Elevator> next = awaitElevator(passenger);
+        if (!next.isDone() && passenger.getAssignedCar() == null) {
+          queuePickup(passenger.getStartFloor(), passenger.getDirection(), passenger.getDestinationFloor());
+        }
+        board(passenger, boarded, next);
+      }
+    });
+  }
+
   public void shutdown() {
     running = false;
     for (Elevator elevator : elevators) {
       elevator.stop();
     }
-    executorService.shutdownNow();
+    arrivals.cancelAll();
+    scheduler.shutdown();
+    eventLog.close();
+    if (trace != null) {
+      // Only a virtual clock replays to the same times, so only its runs have an outcome to check
+      if (scheduler instanceof SimulationScheduler) {
+        trace.finish(scheduler.now());
+      }
+      try {
+        trace.write(Paths.get(config.getTraceFile()));
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot write trace " + config.getTraceFile(), e);
+      }
+    }
+  }
+
+  public Scheduler getScheduler() {
+    return scheduler;
   }
-  
+
+  public BuildingConfig getConfig() {
+    return config;
+  }
+
   public List<Elevator> getElevators() {
     return elevators;
   }
-}
\ No newline at end of file
+}
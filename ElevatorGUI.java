@@ -1,24 +1,32 @@
 import javax.swing.*;
 import java.awt.*;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
 
 public class ElevatorGUI extends JFrame {
-    private static final int NUM_FLOORS = 10;
     private static final int NUM_USERS = 5;
+    private static final int FRAMES_PER_SECOND = 20;
+    private static final int STATUS_LINES = 200; // per user, older lines are dropped
+    private final int numFloors;
     private final ElevatorController controller;
+    private final ExecutorService journeys; // one thread per journey, virtual when configured
     private final UserPanel[] userPanels;
-    private final ElevatorStatusPanel statusPanel;
+    private final ShaftView shaftView;
 
-    public ElevatorGUI() {
-        this.controller = new ElevatorController(3);
+    public ElevatorGUI(BuildingConfig config) {
+        this.numFloors = config.getNumFloors();
+        this.controller = new ElevatorController(config);
+        this.journeys = config.getThreadMode().newTaskExecutor();
         this.userPanels = new UserPanel[NUM_USERS];
-        this.statusPanel = new ElevatorStatusPanel();
+        this.shaftView = new ShaftView(controller.getElevators(), numFloors);
 
         setupUI();
         startStatusUpdater();
     }
 
     private void setupUI() {
-        setTitle("Elevator System - 10 Floors, 3 Elevators");
+        setTitle("Elevator System - " + numFloors + " Floors, " + controller.getElevators().size() + " Elevators");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLayout(new BorderLayout(10, 10));
 
@@ -31,15 +39,16 @@ public class ElevatorGUI extends JFrame {
             mainPanel.add(userPanels[i]);
         }
 
-        add(mainPanel, BorderLayout.CENTER);
-        add(statusPanel, BorderLayout.SOUTH);
+        // Shafts fill the window, the users' controls sit underneath
+        add(shaftView, BorderLayout.CENTER);
+        add(mainPanel, BorderLayout.SOUTH);
 
-        setSize(1400, 700);
+        setSize(1400, 900);
         setLocationRelativeTo(null);
     }
 
     private void startStatusUpdater() {
-        Timer timer = new Timer(500, e -> statusPanel.updateStatus());
+        Timer timer = new Timer(1000 / FRAMES_PER_SECOND, e -> shaftView.refresh());
         timer.start();
     }
 
@@ -49,7 +58,8 @@ public class ElevatorGUI extends JFrame {
         private final JComboBox<String> directionBox;
         private final JTextField destinationFloorField;
         private final JButton callButton;
-        private final JTextArea statusArea;
+        private final StatusLog statusLog;
+        private final JList<String> statusList;
         private boolean inProgress = false;
 
         public UserPanel(int userId) {
@@ -80,10 +90,13 @@ public class ElevatorGUI extends JFrame {
             add(inputPanel, BorderLayout.NORTH);
 
             // Status area
-            statusArea = new JTextArea(20, 20);
-            statusArea.setEditable(false);
-            statusArea.setFont(new Font("Monospaced", Font.PLAIN, 11));
-            JScrollPane scrollPane = new JScrollPane(statusArea);
+            statusLog = new StatusLog(STATUS_LINES);
+            statusList = new JList<>(statusLog);
+            statusList.setVisibleRowCount(8);
+            statusList.setFont(new Font("Monospaced", Font.PLAIN, 11));
+            // Every row the same size, so the list never measures rows it does not show
+            statusList.setPrototypeCellValue("[User " + userId + "] Boarded Elevator 00, going to floor 000...");
+            JScrollPane scrollPane = new JScrollPane(statusList);
             add(scrollPane, BorderLayout.CENTER);
 
             addStatus("Ready to call elevator");
@@ -101,13 +114,13 @@ public class ElevatorGUI extends JFrame {
                 int destinationFloor = Integer.parseInt(destinationFloorField.getText().trim());
 
                 // Validate inputs
-                if (currentFloor < 1 || currentFloor > NUM_FLOORS) {
-                    addStatus("ERROR: Current floor must be 1-" + NUM_FLOORS);
+                if (currentFloor < 1 || currentFloor > numFloors) {
+                    addStatus("ERROR: Current floor must be 1-" + numFloors);
                     return;
                 }
 
-                if (destinationFloor < 1 || destinationFloor > NUM_FLOORS) {
-                    addStatus("ERROR: Destination must be 1-" + NUM_FLOORS);
+                if (destinationFloor < 1 || destinationFloor > numFloors) {
+                    addStatus("ERROR: Destination must be 1-" + numFloors);
                     return;
                 }
 
@@ -126,7 +139,7 @@ public class ElevatorGUI extends JFrame {
                 }
 
                 // Start elevator journey in a separate thread
-                new Thread(() -> makeJourney(currentFloor, direction, destinationFloor)).start();
+                journeys.execute(() -> makeJourney(currentFloor, direction, destinationFloor));
 
             } catch (NumberFormatException ex) {
                 addStatus("ERROR: Please enter valid numbers");
@@ -139,18 +152,17 @@ public class ElevatorGUI extends JFrame {
                 SwingUtilities.invokeLater(() -> callButton.setEnabled(false));
 
                 addStatus("Calling elevator from floor " + currentFloor + "...");
-                controller.requestPickup(currentFloor, direction);
+                Passenger passenger = new Passenger(currentFloor, destinationFloor, controller.getScheduler().now());
+                if (controller.isDestinationDispatch()) {
+                    Elevator assigned = controller.requestTrip(passenger);
+                    addStatus("Please wait for Elevator " + assigned.getId());
+                } else {
+                    controller.requestPickup(currentFloor, direction, destinationFloor);
+                }
 
                 addStatus("Waiting for elevator...");
-                Elevator elevator = controller.waitForElevator(currentFloor, direction);
-
-                addStatus("Elevator " + elevator.getId() + " arrived!");
-
-                // Board elevator
-                Passenger passenger = new Passenger(currentFloor, destinationFloor);
-                synchronized (elevator) {
-                    elevator.addPassenger(passenger);
-                }
+                // Boards the first car with room, calling again if one arrives full
+                Elevator elevator = controller.waitToBoard(passenger);
 
                 addStatus("Boarded Elevator " + elevator.getId() +
                          ", going to floor " + destinationFloor + "...");
@@ -174,56 +186,39 @@ public class ElevatorGUI extends JFrame {
 
         private void addStatus(String message) {
             SwingUtilities.invokeLater(() -> {
-                statusArea.append("[User " + userId + "] " + message + "\n");
-                statusArea.setCaretPosition(statusArea.getDocument().getLength());
+                statusLog.add("[User " + userId + "] " + message);
+                statusList.ensureIndexIsVisible(statusLog.getSize() - 1);
             });
         }
     }
 
-    class ElevatorStatusPanel extends JPanel {
-        private final JLabel[] elevatorLabels;
-
-        public ElevatorStatusPanel() {
-            setLayout(new GridLayout(1, 3, 10, 10));
-            setBorder(BorderFactory.createTitledBorder("Elevator Status"));
-            setPreferredSize(new Dimension(0, 80));
-
-            elevatorLabels = new JLabel[3];
-            for (int i = 0; i < 3; i++) {
-                elevatorLabels[i] = new JLabel("", SwingConstants.CENTER);
-                elevatorLabels[i].setFont(new Font("Monospaced", Font.BOLD, 14));
-                elevatorLabels[i].setBorder(BorderFactory.createEtchedBorder());
-                add(elevatorLabels[i]);
-            }
-        }
-
-        public void updateStatus() {
-            for (int i = 0; i < controller.getElevators().size(); i++) {
-                Elevator elevator = controller.getElevators().get(i);
-                int floor = elevator.getCurrentFloor();
-                Elevator.Direction dir = elevator.getCurrentDirection();
-                int passengers = elevator.getPassengerCount();
-
-                String arrow = "";
-                if (dir == Elevator.Direction.UP) arrow = "↑";
-                else if (dir == Elevator.Direction.DOWN) arrow = "↓";
-                else arrow = "•";
-
-                String text = String.format(
-                    "<html><center>Elevator %d<br>Floor: %d %s<br>Passengers: %d/8</center></html>",
-                    elevator.getId(), floor, arrow, passengers
-                );
-
-                elevatorLabels[i].setText(text);
-            }
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("watch")) {
+            watch(args);
+            return;
         }
-    }
-
-    public static void main(String[] args) {
+        BuildingConfig config = BuildingConfig.fromCommandLine(args);
         SwingUtilities.invokeLater(() -> {
-            ElevatorGUI gui = new ElevatorGUI();
+            ElevatorGUI gui = new ElevatorGUI(config);
             gui.setVisible(true);
         });
     }
-}
 
+    // java ElevatorGUI watch [pattern] [calls per hour] [hours] [speed] [building config]:
+    // runs a headless load test paced to speed times real time and opens a shaft view on
+    // its cars. The results print when the run ends.
+    private static void watch(String[] args) throws IOException {
+        String pattern = args.length > 1 ? args[1].toLowerCase() : "up_peak";
+        double callsPerHour = args.length > 2 ? Double.parseDouble(args[2]) : 600;
+        double hours = args.length > 3 ? Double.parseDouble(args[3]) : 1;
+        double speed = args.length > 4 ? Double.parseDouble(args[4]) : 10;
+        BuildingConfig config = BuildingConfig.fromCommandLine(Arrays.copyOfRange(args, Math.min(5, args.length), args.length));
+
+        LoadTest test = new LoadTest(config, pattern, callsPerHour, Math.round(hours * 3_600_000), 42);
+        Simulation simulation = new Simulation(config);
+        simulation.setSpeed(speed);
+        ShaftView.attach(pattern + " - " + config.getNumFloors() + " Floors, " + config.getNumCars() + " Elevators",
+            simulation.getBuilding().getElevators(), config.getNumFloors(), FRAMES_PER_SECOND, simulation);
+        test.run(simulation, 0, System.out).print();
+    }
+}
@@ -0,0 +1,18 @@
+// Told of a car's moves and its passengers. Calls come after the car has released its lock,
+// so a listener may take other locks or call back into the car.
+public interface ElevatorListener {
+  // The car moved a floor or went idle
+  void onStateChanged(Elevator elevator);
+
+  // The car is stopped at the floor and will leave heading the given way (IDLE if either way)
+  void onArrived(Elevator elevator, int floor, Elevator.Direction heading, int freeSeats);
+
+  // The car is leaving the floor it was stopped at
+  void onDeparted(Elevator elevator);
+
+  // The passenger got on, their board time is set
+  void onBoarded(Elevator elevator, Passenger passenger);
+
+  // The passenger got off at their floor, their arrival time is set
+  void onDroppedOff(Elevator elevator, Passenger passenger);
+}
@@ -0,0 +1,79 @@
+import java.util.BitSet;
+
+// Immutable view of a car, published by the Elevator after every change so readers
+// (dispatcher, GUI, pollers) never take the elevator's lock. The version goes up by
+// one with each published state, so a reader can tell whether anything moved.
+// Reserved seats are held for passengers who have been given the car but are not on
+// board yet; they count against capacity like riders do.
+// The snapshot keeps the destinations set it is given rather than copying it, so the
+// dispatcher's per-round copies share one set: the caller must pass a set nothing else
+// will change. Readers get a copy from destinations(), or query it in place below.
+public record ElevatorState(int floor, Elevator.Direction direction, int passengerCount, int reservedSeats,
+    int capacity, BitSet destinations, long version) {
+
+  // Copy of the floors the car will stop at
+  @Override
+  public BitSet destinations() {
+    return (BitSet) destinations.clone();
+  }
+
+  // The same snapshot with a different number of seats spoken for, as the dispatcher sees
+  // the car once the passengers it has been sent for are counted
+  public ElevatorState withReservedSeats(int reservedSeats) {
+    return new ElevatorState(floor, direction, passengerCount, reservedSeats, capacity, destinations, version);
+  }
+
+  public boolean hasDestinations() {
+    return !destinations.isEmpty();
+  }
+
+  public boolean stopsAt(int floor) {
+    return destinations.get(floor);
+  }
+
+  // First stop above the floor, -1 if none
+  public int nextStopAbove(int floor) {
+    return destinations.nextSetBit(floor + 1);
+  }
+
+  // First stop below the floor, -1 if none
+  public int nextStopBelow(int floor) {
+    return floor <= 0 ? -1 : destinations.previousSetBit(floor - 1);
+  }
+
+  // Lowest and highest stops, -1 if there are none
+  public int lowestStop() {
+    return destinations.nextSetBit(0);
+  }
+
+  public int highestStop() {
+    return destinations.length() - 1;
+  }
+
+  public boolean isIdle() {
+    return direction == Elevator.Direction.IDLE;
+  }
+
+  public boolean isFull() {
+    return passengerCount + reservedSeats >= capacity;
+  }
+
+  public int freeSeats() {
+    return Math.max(0, capacity - passengerCount - reservedSeats);
+  }
+
+  // True if the car is already moving the requested way and the floor is on its sweep
+  public boolean canPickup(int floor, Elevator.Direction direction) {
+    if (isFull() || isIdle() || this.direction != direction || destinations.isEmpty()) {
+      return false;
+    }
+    if (direction == Elevator.Direction.UP) {
+      // Only pickup if the floor is between current and the furthest destination going up
+      int maxDestination = Math.max(this.floor, destinations.length() - 1);
+      return floor >= this.floor && floor <= maxDestination;
+    }
+    // Only pickup if the floor is between the lowest destination and current going down
+    int minDestination = Math.min(this.floor, destinations.nextSetBit(0));
+    return floor <= this.floor && floor >= minDestination;
+  }
+}
@@ -1,18 +1,21 @@
+import java.io.IOException;
 import java.util.*;
 
 public class ElevatorSystem {
-  private static final int NUM_FLOORS = 10;
-  private static final int NUM_ELEVATORS = 3;
+  private final int numFloors;
+  private final int numElevators;
   private final ElevatorController controller;
 
-  public ElevatorSystem() {
-      this.controller = new ElevatorController(NUM_ELEVATORS);
+  public ElevatorSystem(BuildingConfig config) {
+      this.numFloors = config.getNumFloors();
+      this.numElevators = config.getNumCars();
+      this.controller = new ElevatorController(config);
   }
 
   public void start() {
     System.out.println("=== Elevator System Started ===");
-    System.out.println("Building has " + NUM_FLOORS + " floors");
-    System.out.println(NUM_ELEVATORS + " elevators available");
+    System.out.println("Building has " + numFloors + " floors");
+    System.out.println(numElevators + " elevators available");
     System.out.println();
 
     Scanner scanner = new Scanner(System.in);
@@ -38,13 +41,13 @@ public class ElevatorSystem {
     try {            // Get current floor
       int currentFloor;
       while (true) {
-          System.out.print("What floor are you on? (1-" + NUM_FLOORS + "): ");
+          System.out.print("What floor are you on? (1-" + numFloors + "): ");
           try {
             currentFloor = Integer.parseInt(scanner.nextLine().trim());
-            if (currentFloor >= 1 && currentFloor <= NUM_FLOORS) {
+            if (currentFloor >= 1 && currentFloor <= numFloors) {
                   break;
               } else {
-                  System.out.println("Invalid floor. Please enter a number between 1 and " + NUM_FLOORS);
+                  System.out.println("Invalid floor. Please enter a number between 1 and " + numFloors);
               }
           } catch (NumberFormatException e) {
               System.out.println("Invalid input. Please enter a number.");
@@ -58,7 +61,7 @@ public class ElevatorSystem {
           String dirInput = scanner.nextLine().trim().toUpperCase();
 
           if (dirInput.equals("UP")) {
-              if (currentFloor == NUM_FLOORS) {
+              if (currentFloor == numFloors) {
                   System.out.println("You're on the top floor. You can only go DOWN.");
                   continue;
               }
@@ -78,6 +81,7 @@ public class ElevatorSystem {
 
       // Request pickup
       System.out.println("Calling elevator...");
+      long callTime = controller.getScheduler().now();
       controller.requestPickup(currentFloor, direction);
 
       // Wait for elevator to arrive
@@ -90,7 +94,7 @@ public class ElevatorSystem {
       int destinationFloor;
       while (true) {
         if (direction == Elevator.Direction.UP) {
-          System.out.print("Which floor would you like to go to? (" + (currentFloor + 1) + "-" + NUM_FLOORS + "): ");
+          System.out.print("Which floor would you like to go to? (" + (currentFloor + 1) + "-" + numFloors + "): ");
         } else {
           System.out.print("Which floor would you like to go to? (1-" + (currentFloor - 1) + "): ");
         }
@@ -98,9 +102,14 @@ public class ElevatorSystem {
         try {
           destinationFloor = Integer.parseInt(scanner.nextLine().trim());
 
+          if (destinationFloor >= 1 && destinationFloor <= numFloors && !elevator.serves(destinationFloor)) {
+            System.out.println("Elevator " + elevator.getId() + " does not stop at floor " + destinationFloor);
+            continue;
+          }
+
           // Validate destination based on direction
           if (direction == Elevator.Direction.UP) {
-            if (destinationFloor > currentFloor && destinationFloor <= NUM_FLOORS) {
+            if (destinationFloor > currentFloor && destinationFloor <= numFloors) {
               break;
             } else {
               System.out.println("Invalid floor. Must be above floor " + currentFloor);
@@ -118,9 +127,11 @@ public class ElevatorSystem {
       }
 
       // Create passenger and board elevator
-      Passenger passenger = new Passenger(currentFloor, destinationFloor);
-      synchronized (elevator) {
-        elevator.addPassenger(passenger);
+      Passenger passenger = new Passenger(currentFloor, destinationFloor, callTime);
+      if (!elevator.addPassenger(passenger)) {
+        System.out.println("Elevator " + elevator.getId() + " filled up before you got on. Calling again...");
+        controller.requestPickup(currentFloor, direction, destinationFloor);
+        elevator = controller.waitToBoard(passenger);
       }
 
       System.out.println("You have boarded Elevator " + elevator.getId() + ". Going to floor " + destinationFloor + "...");
@@ -141,8 +152,8 @@ public class ElevatorSystem {
       }
     }
 
-  public static void main(String[] args) {
-        ElevatorSystem system = new ElevatorSystem();
+  public static void main(String[] args) throws IOException {
+        ElevatorSystem system = new ElevatorSystem(BuildingConfig.fromCommandLine(args));
         system.start();
     }
 }
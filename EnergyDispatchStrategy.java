@@ -0,0 +1,44 @@
+// Trades the caller's wait against the energy sending the car costs. The wait is the ETA
+// estimate. The energy is what the call adds to the runs the car already has queued: a
+// stop and restart inside the span it is covering anyway, or the run on past its furthest
+// stop. The weight is the ms of wait one kJ is worth, so 0 dispatches as eta, and raising
+// it sends calls to cars that are already heading there, or that regenerate on the way.
+public class EnergyDispatchStrategy implements DispatchStrategy {
+  private final double weight; // ms per kJ
+
+  public EnergyDispatchStrategy(double weight) {
+    if (!(weight >= 0)) {
+      throw new IllegalArgumentException("Energy weight cannot be negative, got " + weight);
+    }
+    this.weight = weight;
+  }
+
+  @Override
+  public double cost(Elevator elevator, ElevatorState state, int floor, Elevator.Direction direction) {
+    BuildingConfig.CarConfig car = elevator.getConfig();
+    double joules = addedJoules(car.getEnergy(), state, floor);
+    double wait = EtaDispatchStrategy.estimateMillis(state, state.isFull(), floor, direction, car);
+    return wait + weight * joules / 1000;
+  }
+
+  // Energy a new stop at the call floor adds, with the car's current riders on board
+  static double addedJoules(EnergyModel energy, ElevatorState state, int callFloor) {
+    int floor = state.floor();
+    int riders = state.passengerCount();
+    if (callFloor == floor || state.stopsAt(callFloor)) {
+      return 0;
+    }
+    if (!state.hasDestinations()) {
+      return energy.runJoules(Math.abs(callFloor - floor), riders, callFloor > floor);
+    }
+    int low = Math.min(floor, state.lowestStop());
+    int high = Math.max(floor, state.highestStop());
+    if (callFloor > high) {
+      return energy.runJoules(callFloor - high, riders, true);
+    }
+    if (callFloor < low) {
+      return energy.runJoules(low - callFloor, riders, false);
+    }
+    return energy.getStartJoules();
+  }
+}
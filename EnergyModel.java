@@ -0,0 +1,60 @@
+// Estimated energy a car draws from the supply. The car is hung against a counterweight
+// that balances it at a share of its rated load, so the motor only lifts or lowers the
+// difference: a heavy car going up or a light one going down draws power, while a heavy
+// car going down or a light one going up drives the motor as a generator, and a
+// regenerative drive returns part of that to the building. Every floor also pays for
+// friction, and every start for bringing the car and counterweight up to speed. Immutable.
+public class EnergyModel {
+  private static final double GRAVITY = 9.81; // m/s^2
+  private static final double MOTOR_EFFICIENCY = 0.8; // share of drawn power that lifts the car
+  private static final double FRICTION_N = 400; // guide and rope losses
+
+  private final double floorHeight; // m
+  private final double passengerMass; // kg
+  private final double balanceMass; // kg of passengers the counterweight balances
+  private final double regeneration; // share of generated energy returned, 0 without a regenerative drive
+  private final double startJoules;
+
+  public EnergyModel(int capacity, double floorHeight, double passengerMass, double balance, double regeneration,
+      double startJoules) {
+    if (!(floorHeight > 0 && passengerMass >= 0 && startJoules >= 0)) {
+      throw new IllegalArgumentException("Floor height must be positive and passenger mass and start energy "
+          + "cannot be negative, got " + floorHeight + ", " + passengerMass + ", " + startJoules);
+    }
+    if (!(balance >= 0 && balance <= 1 && regeneration >= 0 && regeneration <= 1)) {
+      throw new IllegalArgumentException("Balance and regeneration are shares from 0 to 1, got " + balance + ", "
+          + regeneration);
+    }
+    this.floorHeight = floorHeight;
+    this.passengerMass = passengerMass;
+    this.balanceMass = balance * capacity * passengerMass;
+    this.regeneration = regeneration;
+    this.startJoules = startJoules;
+  }
+
+  // One floor of travel with the given number of riders. Negative when the drive returns
+  // more than friction takes.
+  public double floorJoules(int riders, boolean up) {
+    double lifted = (riders * passengerMass - balanceMass) * GRAVITY * floorHeight;
+    double work = up ? lifted : -lifted;
+    double friction = FRICTION_N * floorHeight / MOTOR_EFFICIENCY;
+    return work > 0 ? work / MOTOR_EFFICIENCY + friction : work * regeneration + friction;
+  }
+
+  // A run of the given number of floors from rest, start included
+  public double runJoules(int floors, int riders, boolean up) {
+    return floors <= 0 ? 0 : startJoules + floors * floorJoules(riders, up);
+  }
+
+  public double getStartJoules() {
+    return startJoules;
+  }
+
+  public double getFloorHeight() {
+    return floorHeight;
+  }
+
+  public double getRegeneration() {
+    return regeneration;
+  }
+}
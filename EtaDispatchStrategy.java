@@ -0,0 +1,69 @@
+// Estimated time for the car to reach the caller, following its current sweep through
+// the stops it already has queued, including travel and door dwell at each stop. Busy
+// cars qualify when they will reach the floor heading the caller's way, so a call goes
+// to whichever car gets there first rather than waiting for a passing or idle car.
+public class EtaDispatchStrategy implements DispatchStrategy {
+  @Override
+  public double cost(Elevator elevator, ElevatorState state, int floor, Elevator.Direction direction) {
+    return estimateMillis(state, state.isFull(), floor, direction, elevator.getConfig());
+  }
+
+  // Walks the car's sweep floor by floor. The call floor becomes a stop, so the estimate
+  // only counts if the car's first visit there leaves heading the caller's way or turning
+  // round; otherwise the stop would be used up going the wrong way and the call is refused.
+  // A full car only qualifies if it stops somewhere to let people off first. Travel is
+  // timed run by run between the places the car comes to rest, from the car's motion model,
+  // and each stop dwells as long as one passenger getting on or off takes.
+  // The snapshot's stops are read in place: a stop is used up once the walk has been past
+  // it, and the floors the walk has covered are always one span, lowest to highest.
+  static double estimateMillis(ElevatorState state, boolean full, int callFloor, Elevator.Direction callDirection,
+      BuildingConfig.CarConfig car) {
+    MotionModel motion = car.getMotion();
+    int floor = state.floor();
+    if (!state.hasDestinations() || state.isIdle()) {
+      // Idle cars go straight there
+      return full ? Double.POSITIVE_INFINITY : motion.flightMs(Math.abs(callFloor - floor));
+    }
+    int position = floor;
+    int runStart = floor;
+    int lowest = floor; // span covered so far
+    int highest = floor;
+    boolean startReached = false; // the car's own floor only counts once the walk comes back to it
+    boolean startStop = state.stopsAt(floor);
+    int step = state.direction() == Elevator.Direction.UP ? 1 : -1;
+    double time = 0;
+    boolean unloaded = false;
+    while (true) {
+      boolean startAhead = startStop && !startReached && (step > 0 ? floor > position : floor < position);
+      boolean stopsAhead = startAhead || (step > 0
+          ? state.nextStopAbove(Math.max(position, highest)) != -1
+          : state.nextStopBelow(Math.min(position, lowest)) != -1);
+      if (position == callFloor) {
+        boolean leavesRightWay = (step > 0) == (callDirection == Elevator.Direction.UP);
+        if (!leavesRightWay && stopsAhead) {
+          return Double.POSITIVE_INFINITY;
+        }
+        return full && !unloaded ? Double.POSITIVE_INFINITY : time + motion.flightMs(Math.abs(position - runStart));
+      }
+      boolean callAhead = step > 0 ? callFloor > position : callFloor < position;
+      if (!stopsAhead && !callAhead) {
+        step = -step; // end of the sweep, turn round
+        time += motion.flightMs(Math.abs(position - runStart));
+        runStart = position;
+        continue;
+      }
+      position += step;
+      boolean unvisited = position > highest || position < lowest || (position == floor && !startReached);
+      highest = Math.max(highest, position);
+      lowest = Math.min(lowest, position);
+      if (position == floor) {
+        startReached = true;
+      }
+      if (unvisited && state.stopsAt(position) && position != callFloor) {
+        time += motion.flightMs(Math.abs(position - runStart)) + car.getDwellMs(1);
+        runStart = position;
+        unloaded = true;
+      }
+    }
+  }
+}
@@ -0,0 +1,190 @@
+import java.io.*;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+// Structured event stream for the simulator's hot paths. Cars and the dispatcher append
+// fixed-size events to a preallocated ring buffer with one CAS and no allocation, lock or
+// I/O; a background writer thread drains them in order to the sinks, and parks when there
+// is nothing to write until a producer wakes it. If the writer falls a whole buffer behind,
+// new events are dropped and counted rather than stalling a car.
+public class EventLog {
+  private static final int DEFAULT_CAPACITY = 1 << 16;
+  private static final long CLOSED = Long.MIN_VALUE; // set in claimed by close, no sequence is handed out after
+  private static final EventLog DISABLED = new EventLog(List.of(), 1);
+
+  private final List<EventSink> sinks;
+  private final int capacity;
+  private final int mask;
+  // Slot i holds the event with sequence s where s % capacity == i. Fields are written
+  // before published[i] is set to s + 1, which hands the slot to the writer.
+  private final long[] times;
+  private final EventType[] types;
+  private final int[] cars;
+  private final int[] floors;
+  private final int[] details;
+  private final AtomicLongArray published;
+  private final AtomicLong claimed; // next sequence to hand to a producer, with CLOSED once closed
+  private final AtomicLong consumed; // next sequence the writer will read
+  private final LongAdder dropped;
+  private final Thread writer; // null when there are no sinks
+  private volatile boolean sleeping; // the writer found nothing to do and is parking
+
+  public EventLog(List<EventSink> sinks) {
+    this(sinks, DEFAULT_CAPACITY);
+  }
+
+  public EventLog(List<EventSink> sinks, int capacity) {
+    if (Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Event log capacity must be a power of two: " + capacity);
+    }
+    this.sinks = new ArrayList<>(sinks);
+    this.capacity = capacity;
+    this.mask = capacity - 1;
+    this.times = new long[capacity];
+    this.types = new EventType[capacity];
+    this.cars = new int[capacity];
+    this.floors = new int[capacity];
+    this.details = new int[capacity];
+    this.published = new AtomicLongArray(capacity);
+    this.claimed = new AtomicLong();
+    this.consumed = new AtomicLong();
+    this.dropped = new LongAdder();
+    if (sinks.isEmpty()) {
+      this.writer = null;
+    } else {
+      this.writer = new Thread(this::drain, "event-log");
+      writer.setDaemon(true);
+      writer.start();
+    }
+  }
+
+  // Log that discards everything, for cars built outside a controller
+  public static EventLog disabled() {
+    return DISABLED;
+  }
+
+  // Sinks named by the building config: the console and/or a JSON-lines file
+  public static EventLog forConfig(BuildingConfig config) {
+    List<EventSink> sinks = new ArrayList<>();
+    if (config.isConsoleLog()) {
+      sinks.add(new ConsoleEventSink(System.out));
+    }
+    if (config.getLogFile() != null) {
+      try {
+        sinks.add(new JsonLinesEventSink(Paths.get(config.getLogFile())));
+      } catch (IOException e) {
+        throw new UncheckedIOException("Cannot open event log " + config.getLogFile(), e);
+      }
+    }
+    return new EventLog(sinks);
+  }
+
+  public void log(long time, EventType type, int car, int floor, int detail) {
+    if (writer == null) {
+      return;
+    }
+    long sequence;
+    do {
+      sequence = claimed.get();
+      if ((sequence & CLOSED) != 0) {
+        return;
+      }
+      if (sequence - consumed.get() >= capacity) {
+        dropped.increment();
+        return;
+      }
+    } while (!claimed.compareAndSet(sequence, sequence + 1));
+    int slot = (int) (sequence & mask);
+    times[slot] = time;
+    types[slot] = type;
+    cars[slot] = car;
+    floors[slot] = floor;
+    details[slot] = detail;
+    published.set(slot, sequence + 1);
+    // Read after the publish, which the writer reads after setting sleeping, so one of
+    // the two always sees the other
+    if (sleeping) {
+      LockSupport.unpark(writer);
+    }
+  }
+
+  // Events lost because the buffer was full
+  public long getDroppedCount() {
+    return dropped.sum();
+  }
+
+  // Writes out everything logged so far, then closes the sinks
+  public void close() {
+    if (writer == null) {
+      return;
+    }
+    // Closing and claiming a sequence are one counter, so no event slips in after the
+    // writer's last look and is lost
+    long sequence;
+    do {
+      sequence = claimed.get();
+      if ((sequence & CLOSED) != 0) {
+        return;
+      }
+    } while (!claimed.compareAndSet(sequence, sequence | CLOSED));
+    LockSupport.unpark(writer);
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void drain() {
+    long next = 0;
+    boolean unflushed = false;
+    while (true) {
+      int slot = (int) (next & mask);
+      if (published.get(slot) == next + 1) {
+        for (Iterator<EventSink> it = sinks.iterator(); it.hasNext();) {
+          EventSink sink = it.next();
+          try {
+            sink.write(times[slot], types[slot], cars[slot], floors[slot], details[slot]);
+          } catch (IOException e) {
+            System.err.println("Event log sink failed, dropping it: " + e);
+            it.remove();
+          }
+        }
+        next++;
+        consumed.set(next);
+        unflushed = true;
+      } else if (unflushed) {
+        flushSinks();
+        unflushed = false;
+      } else if (claimed.get() == (next | CLOSED)) {
+        break;
+      } else {
+        sleeping = true;
+        if (published.get(slot) != next + 1 && (claimed.get() & CLOSED) == 0) {
+          LockSupport.park(this);
+        }
+        sleeping = false;
+      }
+    }
+    for (EventSink sink : sinks) {
+      try {
+        sink.close();
+      } catch (IOException e) {
+        System.err.println("Event log sink failed to close: " + e);
+      }
+    }
+  }
+
+  private void flushSinks() {
+    for (Iterator<EventSink> it = sinks.iterator(); it.hasNext();) {
+      try {
+        it.next().flush();
+      } catch (IOException e) {
+        System.err.println("Event log sink failed, dropping it: " + e);
+        it.remove();
+      }
+    }
+  }
+}
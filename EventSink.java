@@ -0,0 +1,12 @@
+import java.io.IOException;
+
+// Destination for logged events. Called only from the event log's writer thread, so
+// implementations need no locking and may block on I/O.
+public interface EventSink {
+  void write(long time, EventType type, int car, int floor, int detail) throws IOException;
+
+  // Called when the buffer runs dry, so sinks can batch I/O between bursts
+  void flush() throws IOException;
+
+  void close() throws IOException;
+}
@@ -0,0 +1,27 @@
+// Kinds of event in the event log. Each event carries a car, a floor and one int of
+// detail whose meaning depends on the type.
+public enum EventType {
+  CAR_MOVED("direction"), // detail: Elevator.Direction ordinal the car is heading
+  DOORS_OPENED(null),
+  DOORS_CLOSED(null),
+  PASSENGER_BOARDED("destination"), // detail: destination floor
+  PASSENGER_ALIGHTED("origin"), // detail: floor the passenger got on
+  PASSENGER_REJECTED("destination"), // car full when the passenger tried to board; detail: destination floor
+  REQUEST_DISPATCHED("direction"); // floor: hall call floor, detail: call direction ordinal
+
+  private final String detailName; // JSON key for the detail, null if there is none
+
+  EventType(String detailName) {
+    this.detailName = detailName;
+  }
+
+  String getDetailName() {
+    return detailName;
+  }
+
+  // Detail as text: direction names for direction details, the number otherwise
+  String formatDetail(int detail) {
+    return detailName != null && detailName.equals("direction")
+        ? Elevator.Direction.values()[detail].name() : Integer.toString(detail);
+  }
+}
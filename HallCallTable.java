@@ -0,0 +1,245 @@
+import java.nio.ByteBuffer;
+import java.util.*;
+
+// Every hall call the controller knows of, in fixed primitive arrays with one slot per
+// (floor, direction, destination group). The group is which cars can serve the callers'
+// destinations, so callers the same cars can take share a slot, and callers bound for
+// different banks from one floor do not. A slot is free, pending (waiting for a car) or
+// assigned (a car is on its way). Opening, merging a caller and finding a slot are
+// constant time; pending and assigned calls are found by scanning a bit set. Nothing is
+// allocated per call or per dispatch round. Not thread-safe: the controller guards it with
+// its lock.
+public class HallCallTable {
+  private final int numFloors;
+  private final int[] groupOfFloor; // destination floor to group, 0 (any car) for floor 0
+  private final long[] time; // when the oldest caller in the slot called
+  private final long[] tiebreaker; // orders calls made in the same millisecond
+  private final long[] serial; // tells a reopened slot from the call it held before
+  private final int[] destination; // the first caller's destination, 0 if unknown
+  private final int[] callers;
+  private final int[] car; // car index on its way to an assigned slot, -1 otherwise
+  private final BitSet pending;
+  private final BitSet assigned;
+  private final IntSort.Order byAge = this::compareAge;
+  private long nextSerial;
+
+  public HallCallTable(BuildingConfig config) {
+    List<BuildingConfig.CarConfig> cars = config.getCars();
+    this.numFloors = config.getNumFloors();
+    // Group 0 is every car: calls with no destination, and floors every car serves
+    Map<BitSet, Integer> groups = new HashMap<>();
+    BitSet allCars = new BitSet(cars.size());
+    allCars.set(0, cars.size());
+    groups.put(allCars, 0);
+    this.groupOfFloor = new int[numFloors + 1];
+    for (int floor = 1; floor <= numFloors; floor++) {
+      BitSet serving = new BitSet(cars.size());
+      for (int i = 0; i < cars.size(); i++) {
+        if (cars.get(i).serves(floor)) {
+          serving.set(i);
+        }
+      }
+      Integer group = groups.get(serving);
+      if (group == null) {
+        group = groups.size();
+        groups.put(serving, group);
+      }
+      groupOfFloor[floor] = group;
+    }
+    int size = groups.size() * 2 * (numFloors + 1);
+    this.time = new long[size];
+    this.tiebreaker = new long[size];
+    this.serial = new long[size];
+    this.destination = new int[size];
+    this.callers = new int[size];
+    this.car = new int[size];
+    Arrays.fill(car, -1);
+    this.pending = new BitSet(size);
+    this.assigned = new BitSet(size);
+  }
+
+  // The slot for a call from the floor heading the given way, to a destination (0 if unknown)
+  public int slot(int floor, Elevator.Direction direction, int destinationFloor) {
+    int group = groupOfFloor[destinationFloor];
+    return ((group * 2) + (direction == Elevator.Direction.DOWN ? 1 : 0)) * (numFloors + 1) + floor;
+  }
+
+  public int floor(int slot) {
+    return slot % (numFloors + 1);
+  }
+
+  public Elevator.Direction direction(int slot) {
+    return (slot / (numFloors + 1)) % 2 == 1 ? Elevator.Direction.DOWN : Elevator.Direction.UP;
+  }
+
+  public long time(int slot) {
+    return time[slot];
+  }
+
+  public int destination(int slot) {
+    return destination[slot];
+  }
+
+  public int callers(int slot) {
+    return callers[slot];
+  }
+
+  // Tells a call from a later one reopened in the same slot, see assign
+  public long serial(int slot) {
+    return serial[slot];
+  }
+
+  // Number of slots, an upper bound on the calls open at once
+  public int size() {
+    return callers.length;
+  }
+
+  // True if the slot holds a call, pending or assigned
+  public boolean isOpen(int slot) {
+    return callers[slot] > 0;
+  }
+
+  public boolean isPending(int slot) {
+    return pending.get(slot);
+  }
+
+  public boolean hasPending() {
+    return !pending.isEmpty();
+  }
+
+  // Opens a pending call in a free slot
+  public void open(int slot, long time, long tiebreaker, int destinationFloor, int callers) {
+    this.time[slot] = time;
+    this.tiebreaker[slot] = tiebreaker;
+    this.serial[slot] = nextSerial++;
+    this.destination[slot] = destinationFloor;
+    this.callers[slot] = callers;
+    pending.set(slot);
+  }
+
+  public void addCaller(int slot) {
+    callers[slot]++;
+  }
+
+  // Adds another table's call to an open one, which keeps the earlier of the two call times
+  public void merge(int slot, long time, long tiebreaker, int callers) {
+    if (time < this.time[slot] || (time == this.time[slot] && tiebreaker < this.tiebreaker[slot])) {
+      this.time[slot] = time;
+      this.tiebreaker[slot] = tiebreaker;
+    }
+    this.callers[slot] += callers;
+  }
+
+  // Hands a pending call to a car. False if the slot no longer holds the call with that serial.
+  public boolean assign(int slot, long serial, int carIndex) {
+    if (!pending.get(slot) || this.serial[slot] != serial) {
+      return false;
+    }
+    pending.clear(slot);
+    assigned.set(slot);
+    car[slot] = carIndex;
+    return true;
+  }
+
+  // Puts an assigned call back in the queue, keeping its time
+  public void requeue(int slot) {
+    assigned.clear(slot);
+    car[slot] = -1;
+    pending.set(slot);
+  }
+
+  public void free(int slot) {
+    pending.clear(slot);
+    assigned.clear(slot);
+    car[slot] = -1;
+    callers[slot] = 0;
+  }
+
+  // The car index on its way to the call, -1 if it is pending or free
+  public int assignedCar(int slot) {
+    return car[slot];
+  }
+
+  // First assigned slot at or after from, -1 if none
+  public int nextAssigned(int from) {
+    return assigned.nextSetBit(from);
+  }
+
+  // First pending slot at or after from, -1 if none
+  public int nextPending(int from) {
+    return pending.nextSetBit(from);
+  }
+
+  // Calls from a floor have one slot per group and direction, slotAt(floor, 0) onwards
+  public int slotsPerFloor() {
+    return time.length / (numFloors + 1);
+  }
+
+  public int slotAt(int floor, int index) {
+    return index * (numFloors + 1) + floor;
+  }
+
+  // True if the first slot's call was made before the second's
+  public boolean isOlder(int slot, int other) {
+    return time[slot] < time[other] || (time[slot] == time[other] && tiebreaker[slot] < tiebreaker[other]);
+  }
+
+  // Oldest first; calls made in the same millisecond with the same tiebreaker go in slot order
+  private int compareAge(int slot, int other) {
+    if (time[slot] != time[other]) {
+      return Long.compare(time[slot], time[other]);
+    }
+    if (tiebreaker[slot] != tiebreaker[other]) {
+      return Long.compare(tiebreaker[slot], tiebreaker[other]);
+    }
+    return Integer.compare(slot, other);
+  }
+
+  // A copy of the call in the slot, for handing it to another table
+  public PickupRequest request(int slot) {
+    return new PickupRequest(floor(slot), direction(slot), time[slot], destination[slot], tiebreaker[slot],
+        callers[slot]);
+  }
+
+  // Open slots only. Serials are not saved: no request is in flight between events, and
+  // restored calls take fresh ones.
+  void save(Checkpoint.Writer out) {
+    int open = 0;
+    for (int slot = 0; slot < callers.length; slot++) {
+      if (isOpen(slot)) {
+        open++;
+      }
+    }
+    out.putInt(open);
+    for (int slot = 0; slot < callers.length; slot++) {
+      if (isOpen(slot)) {
+        out.putInt(slot).putLong(time[slot]).putLong(tiebreaker[slot]).putInt(destination[slot])
+            .putInt(callers[slot]).putInt(car[slot]);
+      }
+    }
+  }
+
+  void restore(ByteBuffer in) {
+    for (int open = in.getInt(); open > 0; open--) {
+      int slot = in.getInt();
+      open(slot, in.getLong(), in.getLong(), in.getInt(), in.getInt());
+      int carIndex = in.getInt();
+      if (carIndex >= 0) {
+        pending.clear(slot);
+        assigned.set(slot);
+        car[slot] = carIndex;
+      }
+    }
+  }
+
+  // Writes the pending slots into slots, oldest call first, and returns how many there are.
+  // The array must hold size() slots; the dispatcher keeps one and reuses it every round.
+  public int pendingSlots(int[] slots) {
+    int count = 0;
+    for (int slot = pending.nextSetBit(0); slot >= 0; slot = pending.nextSetBit(slot + 1)) {
+      slots[count++] = slot;
+    }
+    IntSort.sort(slots, count, byAge);
+    return count;
+  }
+}
@@ -0,0 +1,8 @@
+// Sends every idle car to its configured home floor (car.N.homeFloor), by default the
+// lowest floor it serves, so a bank waits at its lobby or sky lobby.
+public class HomeFloorParkingPolicy implements ParkingPolicy {
+  @Override
+  public int parkingFloor(Elevator elevator, ElevatorState state, int[] waiting, long now) {
+    return elevator.getConfig().getHomeFloor();
+  }
+}
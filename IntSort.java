@@ -0,0 +1,44 @@
+// Sorts an int array in place by a caller's ordering, with no boxing or allocation, for
+// the dispatcher's per-round lists of slots and candidates. Heapsort, so O(n log n) and
+// not stable: orderings that must be repeatable break every tie themselves.
+final class IntSort {
+  interface Order {
+    // Negative if a comes before b, positive if after
+    int compare(int a, int b);
+  }
+
+  private IntSort() {
+  }
+
+  // Sorts values[0, length)
+  static void sort(int[] values, int length, Order order) {
+    for (int i = length / 2 - 1; i >= 0; i--) {
+      siftDown(values, i, length, order);
+    }
+    for (int end = length - 1; end > 0; end--) {
+      int first = values[0];
+      values[0] = values[end];
+      values[end] = first;
+      siftDown(values, 0, end, order);
+    }
+  }
+
+  private static void siftDown(int[] values, int root, int length, Order order) {
+    int value = values[root];
+    while (true) {
+      int child = 2 * root + 1;
+      if (child >= length) {
+        break;
+      }
+      if (child + 1 < length && order.compare(values[child + 1], values[child]) > 0) {
+        child++;
+      }
+      if (order.compare(values[child], value) <= 0) {
+        break;
+      }
+      values[root] = values[child];
+      root = child;
+    }
+    values[root] = value;
+  }
+}
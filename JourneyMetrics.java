@@ -0,0 +1,168 @@
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+// Latency histograms and counters for every passenger journey, fed by the controller as
+// passengers are picked up, board and get off. All recording is lock-free so it can sit
+// on the cars' hot path. Times are in milliseconds of the controller's clock.
+public class JourneyMetrics {
+  private final LatencyHistogram hallCallWait; // call to a car opening its doors for them
+  private final LatencyHistogram boarding; // doors open to on board
+  private final LatencyHistogram ride; // on board to drop-off
+  private final LatencyHistogram journey; // call to drop-off
+  private final LatencyHistogram dispatchLatency; // hall call to a car being assigned
+  private final LongAdder boarded;
+  private final LongAdder delivered;
+  private final LongAdder rejected; // boarding attempts turned away by a full car
+  private final AtomicLongArray carried; // passengers delivered, per car index
+  private long startTime; // set once, or by restore before the clock runs
+
+  public JourneyMetrics(int numCars, long startTime) {
+    this.hallCallWait = new LatencyHistogram();
+    this.boarding = new LatencyHistogram();
+    this.ride = new LatencyHistogram();
+    this.journey = new LatencyHistogram();
+    this.dispatchLatency = new LatencyHistogram();
+    this.boarded = new LongAdder();
+    this.delivered = new LongAdder();
+    this.rejected = new LongAdder();
+    this.carried = new AtomicLongArray(numCars);
+    this.startTime = startTime;
+  }
+
+  void recordBoarded(Passenger passenger) {
+    boarded.increment();
+    long pickup = passenger.getPickupTime() >= 0 ? passenger.getPickupTime() : passenger.getBoardTime();
+    hallCallWait.record(pickup - passenger.getRequestTime());
+    boarding.record(passenger.getBoardTime() - pickup);
+  }
+
+  void recordDelivered(int car, Passenger passenger) {
+    delivered.increment();
+    carried.incrementAndGet(car);
+    ride.record(passenger.getArrivalTime() - passenger.getBoardTime());
+    journey.record(passenger.getArrivalTime() - passenger.getRequestTime());
+  }
+
+  void recordRejected() {
+    rejected.increment();
+  }
+
+  void recordDispatch(long latency) {
+    dispatchLatency.record(latency);
+  }
+
+  void save(Checkpoint.Writer out) {
+    for (LatencyHistogram histogram : histograms()) {
+      histogram.save(out);
+    }
+    out.putLong(boarded.sum()).putLong(delivered.sum()).putLong(rejected.sum());
+    out.putInt(carried.length());
+    for (int i = 0; i < carried.length(); i++) {
+      out.putLong(carried.get(i));
+    }
+    out.putLong(startTime);
+  }
+
+  void restore(ByteBuffer in) {
+    for (LatencyHistogram histogram : histograms()) {
+      histogram.restore(in);
+    }
+    restore(boarded, in.getLong());
+    restore(delivered, in.getLong());
+    restore(rejected, in.getLong());
+    int cars = in.getInt();
+    for (int i = 0; i < cars; i++) {
+      carried.set(i, in.getLong());
+    }
+    startTime = in.getLong();
+  }
+
+  private List<LatencyHistogram> histograms() {
+    return List.of(hallCallWait, boarding, ride, journey, dispatchLatency);
+  }
+
+  private static void restore(LongAdder adder, long value) {
+    adder.reset();
+    adder.add(value);
+  }
+
+  public LatencyHistogram getHallCallWait() {
+    return hallCallWait;
+  }
+
+  public LatencyHistogram getBoarding() {
+    return boarding;
+  }
+
+  public LatencyHistogram getRide() {
+    return ride;
+  }
+
+  public LatencyHistogram getJourney() {
+    return journey;
+  }
+
+  public LatencyHistogram getDispatchLatency() {
+    return dispatchLatency;
+  }
+
+  public long getBoardedCount() {
+    return boarded.sum();
+  }
+
+  public long getDeliveredCount() {
+    return delivered.sum();
+  }
+
+  public long getRejectedCount() {
+    return rejected.sum();
+  }
+
+  // By car index, the car's position in its controller's list
+  public long getCarried(int car) {
+    return carried.get(car);
+  }
+
+  // Share of the time since the controller started that the car was moving or serving a stop
+  public double getUtilization(Elevator elevator, long now) {
+    long elapsed = now - startTime;
+    return elapsed <= 0 ? 0 : Math.min(1, (double) elevator.getBusyMillis(now) / elapsed);
+  }
+
+  // Door openings across the fleet per passenger delivered, lower when trips share stops
+  public double getStopsPerPassenger(List<Elevator> elevators) {
+    long stops = 0;
+    for (Elevator elevator : elevators) {
+      stops += elevator.getStopCount();
+    }
+    long n = delivered.sum();
+    return n == 0 ? 0 : (double) stops / n;
+  }
+
+  // Percentile table plus per-car load, as printed by the periodic report
+  public String report(List<Elevator> elevators, long now) {
+    StringBuilder out = new StringBuilder();
+    out.append(String.format("Metrics at %.1fs: %d boarded, %d delivered, %d turned away full, %.2f stops per passenger%n",
+        (now - startTime) / 1000.0, boarded.sum(), delivered.sum(), rejected.sum(), getStopsPerPassenger(elevators)));
+    out.append(String.format("  %-16s %8s %8s %8s %8s %8s %8s%n", "ms", "count", "mean", "p50", "p95", "p99", "max"));
+    appendRow(out, "hall call wait", hallCallWait);
+    appendRow(out, "boarding", boarding);
+    appendRow(out, "ride", ride);
+    appendRow(out, "journey", journey);
+    appendRow(out, "dispatch", dispatchLatency);
+    for (int car = 0; car < elevators.size(); car++) {
+      Elevator elevator = elevators.get(car);
+      out.append(String.format("  car %-3d %5.1f%% busy, %d carried, %d stops, %d starts, %.2f km, %.2f kWh%n",
+          elevator.getId(), getUtilization(elevator, now) * 100, getCarried(car), elevator.getStopCount(),
+          elevator.getStartCount(), elevator.getDistanceMetres() / 1000, elevator.getEnergyJoules() / 3_600_000));
+    }
+    return out.toString();
+  }
+
+  private static void appendRow(StringBuilder out, String name, LatencyHistogram histogram) {
+    out.append(String.format("  %-16s %8d %8.0f %8d %8d %8d %8d%n", name, histogram.getCount(), histogram.getMean(),
+        histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(95),
+        histogram.getValueAtPercentile(99), histogram.getMax()));
+  }
+}
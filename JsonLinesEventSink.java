@@ -0,0 +1,49 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+// One JSON object per line, for example
+//   {"time":1500,"event":"car_moved","car":2,"floor":4,"direction":"UP"}
+// Times are ms of the controller's clock.
+public class JsonLinesEventSink implements EventSink {
+  private final Writer writer;
+
+  public JsonLinesEventSink(Path file) throws IOException {
+    this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void write(long time, EventType type, int car, int floor, int detail) throws IOException {
+    writer.write("{\"time\":");
+    writer.write(Long.toString(time));
+    writer.write(",\"event\":\"");
+    writer.write(type.name().toLowerCase());
+    writer.write("\",\"car\":");
+    writer.write(Integer.toString(car));
+    writer.write(",\"floor\":");
+    writer.write(Integer.toString(floor));
+    if (type.getDetailName() != null) {
+      writer.write(",\"");
+      writer.write(type.getDetailName());
+      if (type.getDetailName().equals("direction")) {
+        writer.write("\":\"");
+        writer.write(type.formatDetail(detail));
+        writer.write("\"");
+      } else {
+        writer.write("\":");
+        writer.write(Integer.toString(detail));
+      }
+    }
+    writer.write("}\n");
+  }
+
+  @Override
+  public void flush() throws IOException {
+    writer.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+}
@@ -0,0 +1,149 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.*;
+
+// Lock-free histogram of non-negative values (milliseconds here), in the style of
+// HdrHistogram: values below 64 get their own bucket, larger values share log-linear
+// buckets of 32 per power of two, so any reported value is within about 3% of the
+// recorded one. Recording is a few atomic adds; readers scan the counts without
+// stopping writers, so a percentile taken during recording may miss in-flight values.
+public class LatencyHistogram {
+  private static final int LINEAR_BUCKETS = 64; // values 0-63 are exact
+  private static final int SUB_BUCKETS = 32; // per power of two above that
+  private static final int BUCKETS = LINEAR_BUCKETS + (63 - 6) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts;
+  private final LongAdder count;
+  private final LongAdder total;
+  private final AtomicLong max;
+
+  public LatencyHistogram() {
+    this.counts = new AtomicLongArray(BUCKETS);
+    this.count = new LongAdder();
+    this.total = new LongAdder();
+    this.max = new AtomicLong();
+  }
+
+  public void record(long value) {
+    if (value < 0) {
+      value = 0; // clock skew between threads, count it as instant
+    }
+    counts.incrementAndGet(bucket(value));
+    count.increment();
+    total.add(value);
+    if (value > max.get()) {
+      max.accumulateAndGet(value, Math::max);
+    }
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public double getMean() {
+    long n = count.sum();
+    return n == 0 ? 0 : (double) total.sum() / n;
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  // Value at the given percentile (0-100): the highest value in the bucket holding it,
+  // capped at the largest value recorded. 0 when nothing has been recorded.
+  public long getValueAtPercentile(double percentile) {
+    long n = count.sum();
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestValueIn(i), max.get());
+      }
+    }
+    return max.get();
+  }
+
+  // Number of recorded values at or below the given value, to bucket granularity
+  public long getCountAtOrBelow(long value) {
+    if (value < 0) {
+      return 0;
+    }
+    int last = bucket(value);
+    long seen = 0;
+    for (int i = 0; i <= last; i++) {
+      seen += counts.get(i);
+    }
+    return seen;
+  }
+
+  // Adds everything recorded in the other histogram, for totals across controllers
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      long n = other.counts.get(i);
+      if (n > 0) {
+        counts.addAndGet(i, n);
+      }
+    }
+    count.add(other.count.sum());
+    total.add(other.total.sum());
+    max.accumulateAndGet(other.max.get(), Math::max);
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0);
+    }
+    count.reset();
+    total.reset();
+    max.set(0);
+  }
+
+  // Non-empty buckets only, for a checkpoint
+  void save(Checkpoint.Writer out) {
+    int used = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      if (counts.get(i) > 0) {
+        used++;
+      }
+    }
+    out.putInt(used);
+    for (int i = 0; i < BUCKETS; i++) {
+      long n = counts.get(i);
+      if (n > 0) {
+        out.putInt(i).putLong(n);
+      }
+    }
+    out.putLong(count.sum()).putLong(total.sum()).putLong(max.get());
+  }
+
+  // Replaces what was recorded with the saved state
+  void restore(ByteBuffer in) {
+    reset();
+    for (int used = in.getInt(); used > 0; used--) {
+      counts.set(in.getInt(), in.getLong());
+    }
+    count.add(in.getLong());
+    total.add(in.getLong());
+    max.set(in.getLong());
+  }
+
+  private static int bucket(long value) {
+    if (value < LINEAR_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - 5; // keeps the top 6 bits, 32-63
+    return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  private static long highestValueIn(int bucket) {
+    if (bucket < LINEAR_BUCKETS) {
+      return bucket;
+    }
+    int shift = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+    long top = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+    return ((top + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,168 @@
+import java.io.*;
+import java.util.*;
+
+// Headless load test: generated traffic runs against the controller on a virtual clock,
+// so thousands of overlapping journeys take seconds. Reports throughput, the controller's
+// journey metrics and histograms of wait time (call to pickup) and ride time. "compare"
+// runs up-peak traffic under every dispatch strategy, destination dispatch included.
+// Usage: java LoadTest [pattern|day|all|compare] [calls per hour] [hours] [building config]
+public class LoadTest {
+  private static final long DRAIN_STEP_MS = 60_000;
+  private static final long MAX_DRAIN_MS = 2 * 3_600_000;
+  private static final int HISTOGRAM_BUCKETS = 12;
+  private static final int BAR_WIDTH = 40;
+  private static final long REPORT_PERIOD_MS = 15 * 60_000;
+
+  private final BuildingConfig config;
+  private final String pattern;
+  private final List<TrafficGenerator.Trip> trips;
+  private final long durationMillis;
+
+  public LoadTest(BuildingConfig config, String pattern, double callsPerHour, long durationMillis, long seed) {
+    this.config = config;
+    this.pattern = pattern;
+    this.durationMillis = durationMillis;
+    TrafficGenerator generator = new TrafficGenerator(config, seed);
+    this.trips = pattern.equals("day")
+        ? generator.generateDay(callsPerHour, durationMillis)
+        : generator.generate(TrafficPattern.forName(pattern), callsPerHour, 0, durationMillis);
+  }
+
+  // Runs the given calls instead of generated ones, such as a recorded trace
+  public LoadTest(BuildingConfig config, String pattern, List<TrafficGenerator.Trip> trips, long durationMillis) {
+    this.config = config;
+    this.pattern = pattern;
+    this.trips = List.copyOf(trips);
+    this.durationMillis = durationMillis;
+  }
+
+  // Runs the traffic, then keeps the building running until everyone is delivered or the
+  // drain limit is reached. Throughput is measured over the traffic window only. With a
+  // positive report period the metrics report is printed to the stream as the clock runs.
+  public Result run(long reportPeriodMillis, PrintStream reportOut) {
+    return run(new Simulation(config), reportPeriodMillis, reportOut);
+  }
+
+  // As above on a simulation made from this test's config, such as one a viewer is attached to
+  public Result run(Simulation simulation, long reportPeriodMillis, PrintStream reportOut) {
+    ZonedController building = simulation.getBuilding();
+    for (TrafficGenerator.Trip trip : trips) {
+      simulation.addPassenger(trip.time(), trip.origin(), trip.destination());
+    }
+    if (reportPeriodMillis > 0) {
+      building.startMetricsReport(reportPeriodMillis, reportOut);
+    }
+    long wallStart = System.nanoTime();
+    simulation.runUntil(durationMillis);
+    double throughput = simulation.getThroughputPerHour();
+    long drainEnd = durationMillis + MAX_DRAIN_MS;
+    while (simulation.getArrivedCount() < simulation.getPassengerCount() && simulation.now() < drainEnd) {
+      simulation.runUntil(simulation.now() + DRAIN_STEP_MS);
+    }
+    long wallMillis = (System.nanoTime() - wallStart) / 1_000_000;
+    simulation.shutdown();
+    return new Result(pattern, simulation.getPassengerCount(), simulation.getArrivedCount(), throughput,
+        building.getHallCallWait(), building.getRide(), simulation.getJourneyTimes(), simulation.getStopsPerPassenger(),
+        simulation.getTransfersPerPassenger(), simulation.getDistanceKm(), building.getStartCount(),
+        simulation.getEnergyKwh(), building.report(simulation.now()), simulation.getFingerprint(), wallMillis);
+  }
+
+  public record Result(String pattern, int passengers, int delivered, double throughputPerHour,
+      LatencyHistogram waitTimes, LatencyHistogram rideTimes, LatencyHistogram journeyTimes,
+      double stopsPerPassenger, double transfersPerPassenger, double distanceKm, long starts, double energyKwh,
+      String metricsReport, long fingerprint, long wallMillis) {
+
+    public void print() {
+      System.out.printf("%s: %d/%d delivered, %.1f delivered/h, journey mean %.1fs, %.2f transfers per passenger, "
+          + "%d ms wall%n", pattern, delivered, passengers, throughputPerHour, journeyTimes.getMean() / 1000,
+          transfersPerPassenger, wallMillis);
+      System.out.printf("  fleet travelled %.1f km with %d starts, %.2f kWh (%.1f Wh per passenger)%n", distanceKm,
+          starts, energyKwh, delivered == 0 ? 0 : energyKwh * 1000 / delivered);
+      System.out.print(metricsReport);
+      printHistogram("wait", waitTimes);
+      printHistogram("ride", rideTimes);
+      System.out.println();
+    }
+  }
+
+  private static void printHistogram(String name, LatencyHistogram millis) {
+    if (millis.getCount() == 0) {
+      return;
+    }
+    System.out.println("  " + name + " histogram");
+    // Buckets span up to the 99th percentile, the last one also takes the tail
+    long width = Math.max(1000, roundUpToSecond(millis.getValueAtPercentile(99) / HISTOGRAM_BUCKETS + 1));
+    long[] counts = new long[HISTOGRAM_BUCKETS];
+    long below = 0;
+    for (int i = 0; i < HISTOGRAM_BUCKETS - 1; i++) {
+      long upTo = millis.getCountAtOrBelow((i + 1) * width - 1);
+      counts[i] = upTo - below;
+      below = upTo;
+    }
+    counts[HISTOGRAM_BUCKETS - 1] = millis.getCount() - below;
+    long maxCount = Arrays.stream(counts).max().getAsLong();
+    for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+      String range = i == HISTOGRAM_BUCKETS - 1
+          ? String.format(">= %d", i * width / 1000)
+          : String.format("%d-%d", i * width / 1000, (i + 1) * width / 1000);
+      System.out.printf("  %10s s %7d %s%n", range, counts[i], "#".repeat((int) (counts[i] * BAR_WIDTH / maxCount)));
+    }
+  }
+
+  // Same up-peak traffic under each dispatch strategy, throughput relative to eta, the best
+  // strategy that only learns destinations once passengers are on board
+  private static void compareDispatch(BuildingConfig config, double callsPerHour, double hours) {
+    System.out.printf("%-12s %12s %8s %10s %10s %10s %10s %10s%n",
+        "dispatch", "delivered/h", "vs eta", "wait mean", "wait p95", "ride mean", "stops/pax", "kWh");
+    Map<String, Result> results = new LinkedHashMap<>();
+    for (String strategy : DispatchStrategy.NAMES) {
+      LoadTest test = new LoadTest(config.withDispatchStrategy(strategy), "up_peak", callsPerHour,
+          Math.round(hours * 3_600_000), 42);
+      results.put(strategy, test.run(0, System.out));
+    }
+    double baseline = results.get("eta").throughputPerHour();
+    for (Map.Entry<String, Result> entry : results.entrySet()) {
+      Result result = entry.getValue();
+      System.out.printf("%-12s %12.1f %+7.1f%% %9.1fs %9.1fs %9.1fs %10.2f %10.2f%n", entry.getKey(),
+          result.throughputPerHour(), (result.throughputPerHour() / baseline - 1) * 100,
+          result.waitTimes().getMean() / 1000, result.waitTimes().getValueAtPercentile(95) / 1000.0,
+          result.rideTimes().getMean() / 1000, result.stopsPerPassenger(), result.energyKwh());
+    }
+  }
+
+  private static long roundUpToSecond(long millis) {
+    return (millis + 999) / 1000 * 1000;
+  }
+
+  public static void main(String[] args) throws IOException {
+    String pattern = args.length > 0 ? args[0].toLowerCase() : "all";
+    double callsPerHour = args.length > 1 ? Double.parseDouble(args[1]) : 600;
+    double hours = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+    BuildingConfig config = BuildingConfig.fromCommandLine(Arrays.copyOfRange(args, Math.min(3, args.length), args.length));
+
+    if (pattern.equals("compare")) {
+      System.out.printf("%d floors, %d cars, up-peak at %.0f calls/h for %.1fh%n%n",
+          config.getNumFloors(), config.getNumCars(), callsPerHour, hours);
+      compareDispatch(config, callsPerHour, hours);
+      return;
+    }
+    List<String> patterns = new ArrayList<>();
+    if (pattern.equals("all")) {
+      for (TrafficPattern p : TrafficPattern.values()) {
+        patterns.add(p.name().toLowerCase());
+      }
+      patterns.add("day");
+    } else {
+      patterns.add(pattern);
+    }
+
+    System.out.printf("%d floors, %d cars, dispatch %s, %.0f calls/h for %.1fh%n%n",
+        config.getNumFloors(), config.getNumCars(), config.getDispatchStrategy(), callsPerHour, hours);
+    // A single pattern also gets a running report every quarter of a simulated hour
+    long reportPeriod = patterns.size() == 1 ? REPORT_PERIOD_MS : 0;
+    for (String name : patterns) {
+      LoadTest test = new LoadTest(config, name, callsPerHour, Math.round(hours * 3_600_000), 42);
+      test.run(reportPeriod, System.out).print();
+    }
+  }
+}
@@ -0,0 +1,189 @@
+// How long a car takes to travel between floors. The fixed model is the original one: every
+// floor takes the same time. The jerk-limited model runs each trip from rest to rest the way
+// a real drive does: acceleration ramps up at the jerk limit, holds, ramps down as the car
+// reaches its top speed (or the highest speed the trip leaves room for), cruises, then
+// mirrors that to stop. Long runs are then much faster per floor than short ones, which is
+// what makes express zones pay off. Immutable.
+public class MotionModel {
+  private static final int SEARCH_STEPS = 60; // bisections when solving for a speed or a time
+
+  private final long floorTravelMs; // fixed model: per floor; otherwise the time for a one-floor trip
+  private final double floorHeight; // m
+  private final double maxSpeed; // m/s, 0 for the fixed model
+  private final double acceleration; // m/s^2
+  private final double jerk; // m/s^3
+
+  private MotionModel(long floorTravelMs, double floorHeight, double maxSpeed, double acceleration, double jerk) {
+    this.floorTravelMs = floorTravelMs;
+    this.floorHeight = floorHeight;
+    this.maxSpeed = maxSpeed;
+    this.acceleration = acceleration;
+    this.jerk = jerk;
+  }
+
+  public static MotionModel fixed(long floorTravelMs) {
+    if (floorTravelMs < 0) {
+      throw new IllegalArgumentException("Travel time cannot be negative: " + floorTravelMs);
+    }
+    return new MotionModel(floorTravelMs, 0, 0, 0, 0);
+  }
+
+  public static MotionModel jerkLimited(double floorHeight, double maxSpeed, double acceleration, double jerk) {
+    if (!(floorHeight > 0 && maxSpeed > 0 && acceleration > 0 && jerk > 0)) {
+      throw new IllegalArgumentException("Floor height, speed, acceleration and jerk must be positive, got "
+          + floorHeight + ", " + maxSpeed + ", " + acceleration + ", " + jerk);
+    }
+    MotionModel model = new MotionModel(0, floorHeight, maxSpeed, acceleration, jerk);
+    return new MotionModel(Math.round(model.flightMs(1)), floorHeight, maxSpeed, acceleration, jerk);
+  }
+
+  public boolean isFixed() {
+    return maxSpeed == 0;
+  }
+
+  public long getFloorTravelMs() {
+    return floorTravelMs;
+  }
+
+  public double getMaxSpeed() {
+    return maxSpeed;
+  }
+
+  public double getAcceleration() {
+    return acceleration;
+  }
+
+  public double getJerk() {
+    return jerk;
+  }
+
+  public double getFloorHeight() {
+    return floorHeight;
+  }
+
+  // Time for a trip of the given number of floors, from rest to rest
+  public double flightMs(int floors) {
+    if (isFixed() || floors <= 0) {
+      return floors * (double) floorTravelMs;
+    }
+    double distance = floors * floorHeight;
+    double peak = peakSpeed(distance);
+    double ramp = rampDistance(peak);
+    return (2 * rampTime(peak) + (distance - 2 * ramp) / peak) * 1000;
+  }
+
+  // Time from passing floor k - 1 to passing floor k of a trip of the given number of floors,
+  // k counted from 1 at the floor after the start. The steps of a trip add up to its
+  // flightMs, rounded to the millisecond.
+  public long floorTimeMs(int floor, int floors) {
+    if (isFixed()) {
+      return floorTravelMs;
+    }
+    if (floors < 1 || floor < 1 || floor > floors) {
+      throw new IllegalArgumentException("Floor " + floor + " is not within a " + floors + "-floor trip");
+    }
+    return Math.round(passingMs(floor, floors)) - Math.round(passingMs(floor - 1, floors));
+  }
+
+  // When a trip of the given number of floors passes the floor k floors from its start
+  private double passingMs(int floor, int floors) {
+    if (floor == 0) {
+      return 0;
+    }
+    if (floor == floors) {
+      return flightMs(floors);
+    }
+    double distance = floors * floorHeight;
+    double position = floor * floorHeight;
+    double peak = peakSpeed(distance);
+    double ramp = rampDistance(peak);
+    double rampTime = rampTime(peak);
+    double seconds;
+    if (position <= ramp) {
+      seconds = timeToCover(position, peak);
+    } else if (position >= distance - ramp) {
+      // Braking mirrors the ramp up
+      double total = 2 * rampTime + (distance - 2 * ramp) / peak;
+      seconds = total - timeToCover(distance - position, peak);
+    } else {
+      seconds = rampTime + (position - ramp) / peak;
+    }
+    return seconds * 1000;
+  }
+
+  // Highest speed a trip of the distance reaches: the top speed if there is room to ramp up
+  // to it and back down, otherwise the speed whose ramps together cover the distance
+  private double peakSpeed(double distance) {
+    if (2 * rampDistance(maxSpeed) <= distance) {
+      return maxSpeed;
+    }
+    double low = 0;
+    double high = maxSpeed;
+    for (int i = 0; i < SEARCH_STEPS; i++) {
+      double mid = (low + high) / 2;
+      if (2 * rampDistance(mid) <= distance) {
+        low = mid;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  // Peak acceleration on the way to the speed: the limit, or less if the jerk ramps meet first
+  private double peakAcceleration(double speed) {
+    return Math.min(acceleration, Math.sqrt(speed * jerk));
+  }
+
+  // Time to reach the speed from rest: jerk up, constant acceleration, jerk down
+  private double rampTime(double speed) {
+    double peak = peakAcceleration(speed);
+    return speed == 0 ? 0 : speed / peak + peak / jerk;
+  }
+
+  // The ramp is symmetric, so it covers its time at half the final speed
+  private double rampDistance(double speed) {
+    return speed * rampTime(speed) / 2;
+  }
+
+  // Distance covered t seconds into a ramp from rest up to the speed
+  private double rampPosition(double t, double speed) {
+    double peak = peakAcceleration(speed);
+    double jerkTime = peak / jerk;
+    double holdTime = Math.max(0, speed / peak - peak / jerk);
+    if (t <= jerkTime) {
+      return jerk * t * t * t / 6;
+    }
+    double x1 = jerk * jerkTime * jerkTime * jerkTime / 6;
+    double v1 = peak * jerkTime / 2;
+    if (t <= jerkTime + holdTime) {
+      double dt = t - jerkTime;
+      return x1 + v1 * dt + peak * dt * dt / 2;
+    }
+    double x2 = x1 + v1 * holdTime + peak * holdTime * holdTime / 2;
+    double v2 = v1 + peak * holdTime;
+    double dt = Math.min(t - jerkTime - holdTime, jerkTime);
+    return x2 + v2 * dt + peak * dt * dt / 2 - jerk * dt * dt * dt / 6;
+  }
+
+  // Seconds into the ramp up to the speed at which the car has covered the distance
+  private double timeToCover(double position, double speed) {
+    double low = 0;
+    double high = rampTime(speed);
+    for (int i = 0; i < SEARCH_STEPS; i++) {
+      double mid = (low + high) / 2;
+      if (rampPosition(mid, speed) < position) {
+        low = mid;
+      } else {
+        high = mid;
+      }
+    }
+    return high;
+  }
+
+  @Override
+  public String toString() {
+    return isFixed() ? floorTravelMs + " ms per floor"
+        : String.format("%.1f m/s, %.1f m/s^2, %.1f m/s^3 over %.1f m floors", maxSpeed, acceleration, jerk, floorHeight);
+  }
+}
@@ -0,0 +1,18 @@
+// The original dispatch rule: the nearest car already passing the floor in the requested
+// direction, otherwise the nearest idle car. Busy cars that are not passing never qualify.
+public class NearestCarStrategy implements DispatchStrategy {
+  // Added to idle cars so that any passing car is preferred
+  private static final double IDLE_PENALTY = 1_000_000;
+
+  @Override
+  public double cost(Elevator elevator, ElevatorState state, int floor, Elevator.Direction direction) {
+    int distance = Math.abs(state.floor() - floor);
+    if (state.canPickup(floor, direction)) {
+      return distance;
+    }
+    if (state.isIdle() && !state.isFull()) {
+      return IDLE_PENALTY + distance;
+    }
+    return Double.POSITIVE_INFINITY;
+  }
+}
@@ -0,0 +1,36 @@
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Decides where an idle car waits for its next call. The controller asks once a car has
+// stood parked for a while with no calls queued, and sends it to the floor returned;
+// returning the car's own floor leaves it where it is.
+public interface ParkingPolicy {
+  List<String> NAMES = List.of("none", "home", "demand");
+
+  // waiting counts, by floor, the other idle cars parked there or on their way to park
+  int parkingFloor(Elevator elevator, ElevatorState state, int[] waiting, long now);
+
+  // A passenger called a car at the floor, for policies that learn where demand comes from
+  default void recordCall(int floor, long time) {
+  }
+
+  // What the policy has learned, for a checkpoint; restore reads back what save wrote
+  default void save(Checkpoint.Writer out) {
+  }
+
+  default void restore(ByteBuffer in) {
+  }
+
+  static ParkingPolicy forName(String name, BuildingConfig config) {
+    switch (name.trim().toLowerCase()) {
+      case "none":
+        return (elevator, state, waiting, now) -> state.floor();
+      case "home":
+        return new HomeFloorParkingPolicy();
+      case "demand":
+        return new DemandParkingPolicy(config.getNumFloors(), config.getNumCars());
+      default:
+        throw new IllegalArgumentException("Unknown parking policy '" + name + "', expected one of " + NAMES);
+    }
+  }
+}
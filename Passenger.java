@@ -1,3 +1,4 @@
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 
 public class Passenger {
@@ -5,14 +6,22 @@ public class Passenger {
     private final int destinationFloor;
     private final Elevator.Direction direction;
     private final CountDownLatch arrivalLatch;
-    private final long requestTime;
+    private final CompletableFuture<Passenger> arrival; // completes at drop-off, for callers that cannot block
+    // Journey timeline in ms of the controller's clock (Scheduler.now())
+    private final long requestTime; // hall call made
+    private volatile long pickupTime; // a car opened its doors for them, -1 until then
+    private long boardTime; // got on, see board()
+    private long arrivalTime; // got off, valid once arrived
+    private volatile Elevator assignedCar; // car named by destination dispatch, null for hall calls
     
-    public Passenger(int startFloor, int destinationFloor) {
+    public Passenger(int startFloor, int destinationFloor, long requestTime) {
         this.startFloor = startFloor;
         this.destinationFloor = destinationFloor;
         this.direction = destinationFloor > startFloor ? Elevator.Direction.UP : Elevator.Direction.DOWN;
         this.arrivalLatch = new CountDownLatch(1);
-        this.requestTime = System.nanoTime();
+        this.arrival = new CompletableFuture<>();
+        this.requestTime = requestTime;
+        this.pickupTime = -1;
     }
     
     public int getStartFloor() {
@@ -31,11 +40,59 @@ public class Passenger {
         return requestTime;
     }
     
+    // Binds the passenger to one car: only that car will be handed to them
+    public void assign(Elevator car) {
+        assignedCar = car;
+    }
+    
+    public Elevator getAssignedCar() {
+        return assignedCar;
+    }
+    
+    public void pickUp(long time) {
+        pickupTime = time;
+    }
+    
+    public long getPickupTime() {
+        return pickupTime;
+    }
+    
+    public void board(long time) {
+        boardTime = time;
+    }
+    
+    public long getBoardTime() {
+        return boardTime;
+    }
+    
     public void arrive() {
         arrivalLatch.countDown();
+        arrival.complete(this);
+    }
+    
+    // Records the drop-off time from the elevator's clock before releasing waiters
+    public void arrive(long time) {
+        arrivalTime = time;
+        arrivalLatch.countDown();
+        arrival.complete(this);
+    }
+    
+    public long getArrivalTime() {
+        return arrivalTime;
+    }
+    
+    public boolean hasArrived() {
+        return arrivalLatch.getCount() == 0;
     }
     
     public void waitForArrival() throws InterruptedException {
         arrivalLatch.await();
     }
+    
+    // Completes when the passenger is dropped off. Dependent actions run on the car's
+    // thread, after it has released its lock but before it has finished the stop, so work
+    // that calls into cars should be scheduled as an event of its own rather than run inline.
+    public CompletableFuture<Passenger> getArrival() {
+        return arrival;
+    }
 }
\ No newline at end of file
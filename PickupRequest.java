@@ -1,14 +1,35 @@
+// A hall call as a value. The controller keeps its calls in a HallCallTable and dispatches
+// them from there; a call leaves the table as one of these when another shard takes it over.
 public class PickupRequest implements Comparable<PickupRequest> {
   private final int floor;
   private final Elevator.Direction direction;
   private final long timestamp;
-  private final double tiebreaker; // Random value for breaking ties
+  private final int destinationFloor; // 0 when the caller has not said where they are going
+  private final long tiebreaker; // orders requests made in the same millisecond
+  private final int callerCount; // passengers merged into this hall call
   
-  public PickupRequest(int floor, Elevator.Direction direction) {
+  public PickupRequest(int floor, Elevator.Direction direction, long timestamp) {
+    this(floor, direction, timestamp, 0);
+  }
+  
+  public PickupRequest(int floor, Elevator.Direction direction, long timestamp, int destinationFloor) {
+    this(floor, direction, timestamp, destinationFloor, 0);
+  }
+  
+  // The controller draws tiebreakers from its seeded random source, so runs can be replayed
+  public PickupRequest(int floor, Elevator.Direction direction, long timestamp, int destinationFloor,
+      long tiebreaker) {
+    this(floor, direction, timestamp, destinationFloor, tiebreaker, 1);
+  }
+  
+  PickupRequest(int floor, Elevator.Direction direction, long timestamp, int destinationFloor, long tiebreaker,
+      int callerCount) {
     this.floor = floor;
     this.direction = direction;
-    this.timestamp = System.nanoTime();
-    this.tiebreaker = Math.random();
+    this.timestamp = timestamp;
+    this.destinationFloor = destinationFloor;
+    this.tiebreaker = tiebreaker;
+    this.callerCount = callerCount;
   }
   
   public int getFloor() {
@@ -23,6 +44,23 @@ public class PickupRequest implements Comparable<PickupRequest> {
     return timestamp;
   }
   
+  public int getDestinationFloor() {
+    return destinationFloor;
+  }
+  
+  public long getTiebreaker() {
+    return tiebreaker;
+  }
+  
+  public int getCallerCount() {
+    return callerCount;
+  }
+  
+  // True if the car serves the pickup floor and, when known, the destination
+  public boolean isServedBy(Elevator elevator) {
+    return elevator.serves(floor) && (destinationFloor == 0 || elevator.serves(destinationFloor));
+  }
+  
   @Override
   public int compareTo(PickupRequest other) {
     // First compare by timestamp
@@ -31,6 +69,6 @@ public class PickupRequest implements Comparable<PickupRequest> {
         return timeCompare;
     }
     // If timestamps are equal, use tiebreaker
-    return Double.compare(this.tiebreaker, other.tiebreaker);
+    return Long.compare(this.tiebreaker, other.tiebreaker);
   }
 }
@@ -0,0 +1,52 @@
+import java.util.concurrent.*;
+
+public class RealTimeScheduler implements Scheduler {
+  private final ScheduledExecutorService executorService;
+  private final ExecutorService workers; // runs due events in VIRTUAL mode, null otherwise
+  private final long origin;
+
+  public RealTimeScheduler(int threads) {
+    this(threads, ThreadMode.PLATFORM);
+  }
+
+  // In VIRTUAL mode one platform timer thread only waits for due times, and every event
+  // runs on its own virtual thread, so the thread count does not limit the simulation
+  public RealTimeScheduler(int threads, ThreadMode mode) {
+    if (mode.effective() == ThreadMode.VIRTUAL) {
+      this.executorService = Executors.newSingleThreadScheduledExecutor();
+      this.workers = mode.newTaskExecutor();
+    } else {
+      this.executorService = Executors.newScheduledThreadPool(threads);
+      this.workers = null;
+    }
+    this.origin = System.nanoTime();
+  }
+
+  @Override
+  public long now() {
+    return (System.nanoTime() - origin) / 1_000_000;
+  }
+
+  @Override
+  public void schedule(long delayMillis, Runnable event) {
+    try {
+      if (workers == null) {
+        executorService.schedule(event, delayMillis, TimeUnit.MILLISECONDS);
+      } else if (delayMillis <= 0) {
+        workers.execute(event);
+      } else {
+        executorService.schedule(() -> schedule(0, event), delayMillis, TimeUnit.MILLISECONDS);
+      }
+    } catch (RejectedExecutionException e) {
+      // Already shut down, drop the event
+    }
+  }
+
+  @Override
+  public void shutdown() {
+    executorService.shutdownNow();
+    if (workers != null) {
+      workers.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+
+// Replays a recorded trace (trace.file= in the building config) on a virtual clock with the
+// seed it was recorded under. A trace recorded on a virtual clock is first replayed to the
+// time the recording ended, and must deliver the same rides at the same times. The run is
+// then repeated, and every repeat must make the same dispatch decisions and report the same
+// metrics as the first, so a latency regression can be bisected by replaying one trace
+// against each build.
+// Usage: java Replay <trace file> [runs] [building config]
+public class Replay {
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.err.println("Usage: java Replay <trace file> [runs] [building config]");
+      System.exit(2);
+    }
+    Trace trace = Trace.read(Paths.get(args[0]));
+    int runs = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+    BuildingConfig config = BuildingConfig.fromCommandLine(Arrays.copyOfRange(args, Math.min(2, args.length), args.length))
+        .withSeed(trace.getSeed())
+        .withTraceFile(null);
+    List<TrafficGenerator.Trip> calls = trace.getCalls();
+    long duration = calls.isEmpty() ? 0 : calls.get(calls.size() - 1).time() + 1;
+
+    Trace.Outcome recorded = trace.getOutcome();
+    if (recorded != null) {
+      Trace.Outcome replayed = replayRecording(config, calls, recorded.endTime());
+      boolean same = replayed.equals(recorded);
+      System.out.printf("recording: %d rides delivered by %d ms, digest %016x; replay: %d rides, digest %016x, %s%n",
+          recorded.delivered(), recorded.endTime(), recorded.rideDigest(), replayed.delivered(),
+          replayed.rideDigest(), same ? "matches the recording" : "differs from the recording");
+      if (!same) {
+        System.exit(1);
+      }
+    }
+
+    LoadTest.Result first = null;
+    for (int run = 1; run <= runs; run++) {
+      LoadTest.Result result = new LoadTest(config, "replay", calls, duration).run(0, System.out);
+      if (first == null) {
+        first = result;
+        result.print();
+      }
+      boolean same = result.fingerprint() == first.fingerprint() && result.metricsReport().equals(first.metricsReport());
+      System.out.printf("run %d: fingerprint %016x, %s%n", run, result.fingerprint(),
+          same ? "matches run 1" : "differs from run 1");
+      if (!same) {
+        System.exit(1);
+      }
+    }
+  }
+
+  // The calls run to the time the recording ended, summarised the way the recording was
+  private static Trace.Outcome replayRecording(BuildingConfig config, List<TrafficGenerator.Trip> calls, long endTime) {
+    Simulation simulation = new Simulation(config);
+    for (TrafficGenerator.Trip call : calls) {
+      simulation.addPassenger(call.time(), call.origin(), call.destination());
+    }
+    simulation.runUntil(endTime);
+    List<Passenger> rides = simulation.getDeliveredRides();
+    simulation.shutdown();
+    long digest = 0;
+    for (Passenger ride : rides) {
+      digest += Trace.ride(ride);
+    }
+    return new Trace.Outcome(endTime, rides.size(), digest);
+  }
+}
@@ -0,0 +1,6 @@
+public interface Scheduler extends Clock {
+  // Run the event after the given delay, measured on this scheduler's clock
+  void schedule(long delayMillis, Runnable event);
+
+  void shutdown();
+}
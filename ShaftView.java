@@ -0,0 +1,195 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.List;
+
+// Draws every car in its shaft, one column per car and one row per floor. refresh() reads
+// each car's published state and repaints only the columns whose version changed, so a
+// tick costs one volatile read per car and nothing at all for cars standing still. Text
+// about a car is only built for its tooltip. Safe to attach to cars run by any scheduler,
+// a headless simulation included, since it never takes a car's lock.
+public class ShaftView extends JComponent {
+  private static final long serialVersionUID = 1L;
+  private static final int LABEL_WIDTH = 32; // floor numbers down the left edge
+  private static final Color SHAFT = new Color(245, 245, 245);
+  private static final Color NOT_SERVED = new Color(215, 215, 215);
+  private static final Color FLOOR_LINE = new Color(228, 228, 228);
+  private static final Color STOP = new Color(230, 150, 30);
+  private static final Color UP = new Color(60, 150, 70);
+  private static final Color DOWN = new Color(50, 100, 190);
+  private static final Color IDLE = new Color(130, 130, 130);
+
+  private final List<Elevator> elevators;
+  private final int numFloors;
+  private final ElevatorState[] painted; // per car, the state the last paint showed or will show
+  private final boolean[][] served; // per car and floor, looked up once
+
+  public ShaftView(List<Elevator> elevators, int numFloors) {
+    this.elevators = List.copyOf(elevators);
+    this.numFloors = numFloors;
+    this.painted = new ElevatorState[elevators.size()];
+    this.served = new boolean[elevators.size()][numFloors + 1];
+    for (int i = 0; i < elevators.size(); i++) {
+      painted[i] = elevators.get(i).getState();
+      for (int floor = 1; floor <= numFloors; floor++) {
+        served[i][floor] = elevators.get(i).serves(floor);
+      }
+    }
+    setOpaque(true);
+    setToolTipText(""); // registers for getToolTipText(MouseEvent)
+    setPreferredSize(new Dimension(LABEL_WIDTH + Math.max(400, 24 * elevators.size()),
+        Math.max(300, Math.min(800, 14 * numFloors))));
+  }
+
+  // Call on the event dispatch thread, such as from a Swing Timer at the frame rate
+  public void refresh() {
+    for (int i = 0; i < painted.length; i++) {
+      ElevatorState state = elevators.get(i).getState();
+      if (state.version() != painted[i].version()) {
+        painted[i] = state;
+        repaint(columnX(i), 0, columnX(i + 1) - columnX(i), getHeight());
+      }
+    }
+  }
+
+  private int columnX(int car) {
+    return LABEL_WIDTH + (int) ((long) car * (getWidth() - LABEL_WIDTH) / painted.length);
+  }
+
+  // Top edge of the floor's row, floor 1 at the bottom
+  private int rowY(int floor) {
+    return (int) ((long) (numFloors - floor) * getHeight() / numFloors);
+  }
+
+  @Override
+  protected void paintComponent(Graphics g) {
+    Rectangle clip = g.getClipBounds();
+    if (clip == null) {
+      clip = new Rectangle(0, 0, getWidth(), getHeight());
+    }
+    g.setColor(getBackground() != null ? getBackground() : Color.WHITE);
+    g.fillRect(clip.x, clip.y, clip.width, clip.height);
+    int lowest = Math.max(1, floorAt(clip.y + clip.height));
+    int highest = Math.min(numFloors, floorAt(clip.y));
+
+    if (clip.x < LABEL_WIDTH) {
+      paintLabels(g, lowest, highest);
+    }
+    for (int car = 0; car < painted.length; car++) {
+      int x = columnX(car);
+      int width = columnX(car + 1) - x;
+      if (x + width > clip.x && x < clip.x + clip.width) {
+        paintCar(g, car, x, width, lowest, highest);
+      }
+    }
+  }
+
+  private void paintLabels(Graphics g, int lowest, int highest) {
+    FontMetrics metrics = g.getFontMetrics();
+    int rowHeight = Math.max(1, getHeight() / numFloors);
+    // Label every floor if they fit, otherwise every few
+    int every = Math.max(1, (metrics.getHeight() + rowHeight - 1) / rowHeight);
+    g.setColor(Color.DARK_GRAY);
+    for (int floor = lowest; floor <= highest; floor++) {
+      if (floor == 1 || floor % every == 0) {
+        String label = Integer.toString(floor);
+        int y = rowY(floor) + (rowY(floor - 1) - rowY(floor) + metrics.getAscent()) / 2;
+        g.drawString(label, LABEL_WIDTH - 4 - metrics.stringWidth(label), y);
+      }
+    }
+  }
+
+  private void paintCar(Graphics g, int car, int x, int width, int lowest, int highest) {
+    ElevatorState state = painted[car];
+    int gap = width > 6 ? 2 : 0;
+    for (int floor = lowest; floor <= highest; floor++) {
+      int y = rowY(floor);
+      int height = rowY(floor - 1) - y;
+      g.setColor(served[car][floor] ? SHAFT : NOT_SERVED);
+      g.fillRect(x + gap, y, width - 2 * gap, height);
+      g.setColor(FLOOR_LINE);
+      g.drawLine(x + gap, y, x + width - gap - 1, y);
+      if (state.stopsAt(floor)) {
+        g.setColor(STOP);
+        g.fillRect(x + gap, y + height / 2 - 1, Math.max(2, width / 5), 3);
+      }
+    }
+    if (state.floor() < lowest || state.floor() > highest) {
+      return;
+    }
+    int y = rowY(state.floor());
+    int height = Math.max(2, rowY(state.floor() - 1) - y);
+    Color color = state.direction() == Elevator.Direction.UP ? UP
+        : state.direction() == Elevator.Direction.DOWN ? DOWN : IDLE;
+    g.setColor(color.brighter());
+    g.fillRect(x + gap, y, width - 2 * gap, height);
+    // Load as the filled share of the car, riders and reserved seats alike
+    int load = (width - 2 * gap) * Math.min(state.capacity(), state.passengerCount() + state.reservedSeats())
+        / Math.max(1, state.capacity());
+    g.setColor(color.darker());
+    g.fillRect(x + gap, y, load, height);
+    if (width >= 20 && height >= 12) {
+      String count = Integer.toString(state.passengerCount());
+      FontMetrics metrics = g.getFontMetrics();
+      g.setColor(Color.WHITE);
+      g.drawString(count, x + (width - metrics.stringWidth(count)) / 2,
+          y + (height + metrics.getAscent()) / 2 - 1);
+    }
+  }
+
+  private int floorAt(int y) {
+    return numFloors - (int) ((long) y * numFloors / Math.max(1, getHeight()));
+  }
+
+  @Override
+  public String getToolTipText(MouseEvent event) {
+    for (int car = 0; car < painted.length; car++) {
+      if (event.getX() >= columnX(car) && event.getX() < columnX(car + 1)) {
+        ElevatorState state = painted[car];
+        String arrow = state.direction() == Elevator.Direction.UP ? "\u2191"
+            : state.direction() == Elevator.Direction.DOWN ? "\u2193" : "\u2022";
+        return String.format("Car %d: floor %d %s, %d/%d passengers, stops %s", elevators.get(car).getId(),
+            state.floor(), arrow, state.passengerCount(), state.capacity(), state.destinations());
+      }
+    }
+    return null;
+  }
+
+  // Opens a window on the cars, refreshed fps times a second, with a control to change
+  // the frame rate and, for a simulation, how fast its clock runs. Call from any thread.
+  public static void attach(String title, List<Elevator> elevators, int numFloors, int fps, Simulation simulation) {
+    SwingUtilities.invokeLater(() -> {
+      ShaftView view = new ShaftView(elevators, numFloors);
+      Timer timer = new Timer(1000 / fps, e -> view.refresh());
+      JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+      controls.add(new JLabel("Frames/s:"));
+      JSpinner rate = new JSpinner(new SpinnerNumberModel(fps, 1, 60, 1));
+      rate.addChangeListener(e -> timer.setDelay(1000 / (Integer) rate.getValue()));
+      controls.add(rate);
+      if (simulation != null) {
+        // Simulated seconds per real second, 0 for as fast as it runs
+        controls.add(new JLabel("Speed:"));
+        JSpinner speed = new JSpinner(new SpinnerNumberModel(simulation.getSpeed(), 0, 1000, 1));
+        speed.addChangeListener(e -> simulation.setSpeed((Double) speed.getValue()));
+        controls.add(speed);
+      }
+
+      JFrame frame = new JFrame(title);
+      frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+      frame.add(view, BorderLayout.CENTER);
+      frame.add(controls, BorderLayout.SOUTH);
+      frame.pack();
+      frame.setLocationRelativeTo(null);
+      frame.setVisible(true);
+      timer.start();
+      frame.addWindowListener(new WindowAdapter() {
+        @Override
+        public void windowClosed(WindowEvent e) {
+          timer.stop();
+        }
+      });
+    });
+  }
+}
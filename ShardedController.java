@@ -0,0 +1,267 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Dispatch for large fleets, split into shards that each have their own controller, so
+// their own queue, lock and dispatch pass, and cost calls against their own cars only.
+// Each bank of cars serving the same floors (see ZoneRouter) is cut into shards of at most
+// carsPerShard cars, and the bank's floors into as many contiguous ranges; a hall call goes
+// to the shard owning its floor, found in a table built up front, so no lock is shared
+// between shards on the way in. Work moves between shards two ways: a call for a shard
+// whose cars are all busy goes to the nearest shard of the bank with an idle car, and a
+// car that goes idle with nothing queued takes the oldest waiting call from a busy shard.
+// All shards share one scheduler and one arrival registry, so any car that stops at a
+// floor picks up whoever is waiting there; the other shards then drop the calls at that
+// floor the car answered, so they do not send a second car for passengers already aboard.
+public class ShardedController {
+  private final BuildingConfig config;
+  private final Scheduler scheduler;
+  private final ArrivalRegistry arrivals;
+  private final List<Shard> shards;
+  private final List<Bank> banks; // fewest floors first, so local banks take the trips they can
+  private final List<Elevator> elevators;
+  private final LongAdder redirected; // calls sent away from a busy shard
+  private final LongAdder stolen; // queued calls taken over by a shard with an idle car
+  private final LongAdder answeredElsewhere; // calls dropped because another shard's car took them
+
+  // Real time, every shard's cars and dispatcher on one pool of threads
+  public ShardedController(BuildingConfig config, int carsPerShard) {
+    this(config, new RealTimeScheduler(config.getNumCars() + 1, config.getThreadMode()), carsPerShard);
+  }
+
+  public ShardedController(BuildingConfig config, Scheduler scheduler, int carsPerShard) {
+    if (carsPerShard < 1) {
+      throw new IllegalArgumentException("A shard needs at least 1 car, got " + carsPerShard);
+    }
+    this.config = config;
+    this.scheduler = scheduler;
+    this.arrivals = new ArrivalRegistry(scheduler);
+    this.shards = new ArrayList<>();
+    this.banks = new ArrayList<>();
+    this.elevators = new ArrayList<>();
+    this.redirected = new LongAdder();
+    this.stolen = new LongAdder();
+    this.answeredElsewhere = new LongAdder();
+    DispatchStrategy strategy = DispatchStrategy.forName(config.getDispatchStrategy(), config);
+    for (ZoneRouter.Zone zone : new ZoneRouter(config).getZones()) {
+      Bank bank = new Bank(zone, config.getNumFloors());
+      List<Integer> cars = zone.getCars();
+      int count = (cars.size() + carsPerShard - 1) / carsPerShard;
+      int[] floors = zone.getFloors().stream().toArray();
+      for (int i = 0; i < count; i++) {
+        List<Integer> shardCarIndices = cars.subList(i * cars.size() / count, (i + 1) * cars.size() / count);
+        List<BuildingConfig.CarConfig> shardCars = new ArrayList<>();
+        int[] carIds = new int[shardCarIndices.size()];
+        for (int c = 0; c < carIds.length; c++) {
+          int car = shardCarIndices.get(c);
+          shardCars.add(config.getCars().get(car));
+          carIds[c] = car + 1; // the id it has in the building
+        }
+        // A trace records whole runs, so shards leave it off; each logs to its own file
+        String suffix = ".shard" + (shards.size() + 1);
+        BuildingConfig shardConfig = config.withCars(shardCars)
+            .withEventLog(config.isConsoleLog(), ZonedController.withSuffix(config.getLogFile(), suffix))
+            .withTraceFile(null);
+        Shard shard = new Shard(bank, bank.shards.size(), new ElevatorController(shardConfig, scheduler, strategy, arrivals, carIds));
+        shards.add(shard);
+        bank.shards.add(shard);
+        elevators.addAll(shard.controller.getElevators());
+        for (int f = i * floors.length / count; f < (i + 1) * floors.length / count; f++) {
+          bank.shardForFloor[floors[f]] = shard;
+        }
+      }
+      banks.add(bank);
+    }
+    banks.sort(Comparator.comparingInt((Bank bank) -> bank.floors.cardinality()));
+    for (Shard shard : shards) {
+      shard.controller.setWorkSource(car -> steal(shard, car));
+      shard.controller.setStopListener((car, floor, heading) -> stopped(shard, car, floor, heading));
+    }
+  }
+
+  public void requestPickup(int floor, Elevator.Direction direction) {
+    requestPickup(floor, direction, 0);
+  }
+
+  // Hall call, routed to the shard owning the floor in the most local bank that serves
+  // the trip. A destination of 0 means unknown.
+  public void requestPickup(int floor, Elevator.Direction direction, int destinationFloor) {
+    route(floor, destinationFloor).requestPickup(floor, direction, destinationFloor);
+  }
+
+  // Destination dispatch: the car is chosen within the shard owning the origin floor
+  public Elevator requestTrip(Passenger passenger) {
+    return shardFor(passenger.getStartFloor(), passenger.getDestinationFloor()).requestTrip(passenger);
+  }
+
+  // Completes with the car once the passenger is on board, calling again if a car is full
+  public CompletableFuture<Elevator> boardElevator(Passenger passenger) {
+    return shardFor(passenger.getStartFloor(), passenger.getDestinationFloor()).boardElevator(passenger);
+  }
+
+  public Elevator waitToBoard(Passenger passenger) throws InterruptedException {
+    return shardFor(passenger.getStartFloor(), passenger.getDestinationFloor()).waitToBoard(passenger);
+  }
+
+  // The shard that owns calls from the floor to the destination (0 if unknown)
+  ElevatorController shardFor(int floor, int destinationFloor) {
+    return home(floor, destinationFloor).controller;
+  }
+
+  private Shard home(int floor, int destinationFloor) {
+    if (floor >= 1 && floor <= config.getNumFloors()) {
+      for (Bank bank : banks) {
+        if (bank.serves(floor) && (destinationFloor == 0 || bank.serves(destinationFloor))) {
+          return bank.shardForFloor[floor];
+        }
+      }
+    }
+    throw new IllegalArgumentException("No car serves floor " + floor
+        + (destinationFloor == 0 ? "" : " and floor " + destinationFloor));
+  }
+
+  // The home shard, or while all its cars are busy the nearest shard of its bank with an
+  // idle one. Reads published car states only, so routing never takes a lock.
+  private ElevatorController route(int floor, int destinationFloor) {
+    Shard home = home(floor, destinationFloor);
+    if (home.controller.hasIdleCar()) {
+      return home.controller;
+    }
+    List<Shard> bank = home.bank.shards;
+    int index = home.position;
+    for (int distance = 1; distance < bank.size(); distance++) {
+      // The shard below first, then the one above
+      if (index - distance >= 0 && bank.get(index - distance).controller.hasIdleCar()) {
+        redirected.increment();
+        return bank.get(index - distance).controller;
+      }
+      if (index + distance < bank.size() && bank.get(index + distance).controller.hasIdleCar()) {
+        redirected.increment();
+        return bank.get(index + distance).controller;
+      }
+    }
+    return home.controller;
+  }
+
+  // Called by a shard whose car went idle with nothing queued: the oldest waiting call the
+  // car can serve from the nearest shard of its bank whose own cars are all busy
+  private PickupRequest steal(Shard thief, Elevator car) {
+    List<Shard> bank = thief.bank.shards;
+    int index = thief.position;
+    for (int distance = 1; distance < bank.size(); distance++) {
+      // The shard below first, then the one above
+      PickupRequest call = index - distance >= 0 ? stealFrom(bank.get(index - distance), car) : null;
+      if (call == null && index + distance < bank.size()) {
+        call = stealFrom(bank.get(index + distance), car);
+      }
+      if (call != null) {
+        stolen.increment();
+        return call;
+      }
+    }
+    return null;
+  }
+
+  // The oldest call the car can serve from the shard, if all the shard's own cars are busy
+  private static PickupRequest stealFrom(Shard victim, Elevator car) {
+    return victim.controller.hasIdleCar() ? null : victim.controller.stealPickup(car);
+  }
+
+  // Called by a shard whose car stopped at the floor: every other shard that may hold calls
+  // there, in any bank serving it, drops those the car answered
+  private void stopped(Shard own, Elevator car, int floor, Elevator.Direction heading) {
+    for (Bank bank : banks) {
+      if (!bank.serves(floor)) {
+        continue;
+      }
+      for (Shard shard : bank.shards) {
+        if (shard != own) {
+          answeredElsewhere.add(shard.controller.answeredElsewhere(car, floor, heading));
+        }
+      }
+    }
+  }
+
+  public List<ElevatorController> getShards() {
+    List<ElevatorController> controllers = new ArrayList<>(shards.size());
+    for (Shard shard : shards) {
+      controllers.add(shard.controller);
+    }
+    return controllers;
+  }
+
+  public List<Elevator> getElevators() {
+    return Collections.unmodifiableList(elevators);
+  }
+
+  public long getRedirectedCount() {
+    return redirected.sum();
+  }
+
+  public long getStolenCount() {
+    return stolen.sum();
+  }
+
+  public long getAnsweredElsewhereCount() {
+    return answeredElsewhere.sum();
+  }
+
+  // Dispatch latency over every shard
+  public LatencyHistogram getDispatchLatency() {
+    LatencyHistogram total = new LatencyHistogram();
+    for (Shard shard : shards) {
+      total.add(shard.controller.getMetrics().getDispatchLatency());
+    }
+    return total;
+  }
+
+  public LatencyHistogram getHallCallWait() {
+    LatencyHistogram total = new LatencyHistogram();
+    for (Shard shard : shards) {
+      total.add(shard.controller.getMetrics().getHallCallWait());
+    }
+    return total;
+  }
+
+  public Scheduler getScheduler() {
+    return scheduler;
+  }
+
+  public BuildingConfig getConfig() {
+    return config;
+  }
+
+  public void shutdown() {
+    for (Shard shard : shards) {
+      shard.controller.shutdown();
+    }
+  }
+
+  // Cars serving the same floors, and the shards they are split into
+  private static final class Bank {
+    private final BitSet floors;
+    private final List<Shard> shards = new ArrayList<>(); // in floor order
+    private final Shard[] shardForFloor; // the shard owning hall calls from each served floor
+
+    Bank(ZoneRouter.Zone zone, int numFloors) {
+      this.floors = zone.getFloors();
+      this.shardForFloor = new Shard[numFloors + 1];
+    }
+
+    boolean serves(int floor) {
+      return floors.get(floor);
+    }
+  }
+
+  private static final class Shard {
+    private final Bank bank;
+    private final int position; // index in bank.shards
+    private final ElevatorController controller;
+
+    Shard(Bank bank, int position, ElevatorController controller) {
+      this.bank = bank;
+      this.position = position;
+      this.controller = controller;
+    }
+  }
+}
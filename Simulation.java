@@ -0,0 +1,365 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+
+// Replays building traffic on a virtual clock. Passengers call, wait, board and ride
+// through scheduled events, so an hour of traffic takes milliseconds to run. Every zone's
+// controller runs on the same clock, and passengers change cars at transfer floors. A run
+// can be checkpointed between runUntil calls and restored, to resume it or fork what-if runs.
+public class Simulation {
+  private static final long PACE_STEP_NANOS = 10_000_000; // wall time per paced step
+  private static final int CAR_EVENT = 0; // kinds of event a checkpoint puts back on the clock
+  private static final int PARK_EVENT = 1;
+  private static final int CALL_EVENT = 2;
+  private final SimulationScheduler scheduler;
+  private final ZonedController building;
+  private final List<ZonedController.Journey> journeys;
+  private volatile double speed; // simulated ms per real ms, 0 to run flat out
+
+  // Runs headless: car events go to the configured log file only, never the console
+  public Simulation(BuildingConfig config) {
+    this.scheduler = new SimulationScheduler();
+    this.building = new ZonedController(config.withEventLog(false, config.getLogFile()), scheduler);
+    this.journeys = new ArrayList<>();
+  }
+
+  // Schedule a passenger to call an elevator at the given simulated time
+  public void addPassenger(long atMillis, int startFloor, int destinationFloor) {
+    scheduler.schedule(atMillis - scheduler.now(), new Call(startFloor, destinationFloor));
+  }
+
+  // A passenger's call still to come, its own class so a checkpoint can tell it on the clock
+  private final class Call implements Runnable {
+    private final int startFloor;
+    private final int destinationFloor;
+
+    Call(int startFloor, int destinationFloor) {
+      this.startFloor = startFloor;
+      this.destinationFloor = destinationFloor;
+    }
+
+    @Override
+    public void run() {
+      callElevator(startFloor, destinationFloor);
+    }
+  }
+
+  private void callElevator(int startFloor, int destinationFloor) {
+    journeys.add(building.travel(startFloor, destinationFloor));
+  }
+
+  // Holds the clock to at most speed times real time, so a viewer reading the cars' state
+  // can follow the run. 0 (the default) runs as fast as the events allow.
+  public void setSpeed(double speed) {
+    if (!(speed >= 0)) {
+      throw new IllegalArgumentException("Speed must be 0 or more: " + speed);
+    }
+    this.speed = speed;
+  }
+
+  public double getSpeed() {
+    return speed;
+  }
+
+  public void runUntil(long endMillis) {
+    // Paced, the clock advances one step's worth of simulated time per PACE_STEP_NANOS
+    while (speed > 0 && scheduler.now() < endMillis) {
+      long stepStart = System.nanoTime();
+      long step = Math.max(1, Math.round(speed * PACE_STEP_NANOS / 1_000_000));
+      scheduler.runUntil(Math.min(endMillis, scheduler.now() + step));
+      LockSupport.parkNanos(PACE_STEP_NANOS - (System.nanoTime() - stepStart));
+    }
+    scheduler.runUntil(endMillis);
+  }
+
+  public int getPassengerCount() {
+    return journeys.size();
+  }
+
+  public int getArrivedCount() {
+    int arrived = 0;
+    for (ZonedController.Journey journey : journeys) {
+      if (journey.hasArrived()) {
+        arrived++;
+      }
+    }
+    return arrived;
+  }
+
+  // Wait from hall call to a car opening its doors, over rides that have boarded
+  public double getAverageWaitMillis() {
+    return building.getHallCallWait().getMean();
+  }
+
+  // Wait time at the given percentile (0-100) over rides that have boarded
+  public long getWaitPercentileMillis(double percentile) {
+    return building.getHallCallWait().getValueAtPercentile(percentile);
+  }
+
+  // Call to arrival at the destination, over passengers delivered, transfers included
+  public LatencyHistogram getJourneyTimes() {
+    LatencyHistogram times = new LatencyHistogram();
+    for (ZonedController.Journey journey : journeys) {
+      if (journey.hasArrived()) {
+        times.record(journey.getArrivalTime() - journey.getRequestTime());
+      }
+    }
+    return times;
+  }
+
+  // Door openings per passenger delivered, across every zone
+  public double getStopsPerPassenger() {
+    int arrived = getArrivedCount();
+    return arrived == 0 ? 0 : (double) building.getStopCount() / arrived;
+  }
+
+  // Transfers per passenger delivered
+  public double getTransfersPerPassenger() {
+    int arrived = 0;
+    int transfers = 0;
+    for (ZonedController.Journey journey : journeys) {
+      if (journey.hasArrived()) {
+        arrived++;
+        transfers += journey.getTransfers();
+      }
+    }
+    return arrived == 0 ? 0 : (double) transfers / arrived;
+  }
+
+  public double getDistanceKm() {
+    return building.getDistanceMetres() / 1000;
+  }
+
+  // Estimated energy the fleet has drawn so far, net of regeneration
+  public double getEnergyKwh() {
+    return building.getEnergyJoules() / 3_600_000;
+  }
+
+  // Passengers delivered per simulated hour so far
+  public double getThroughputPerHour() {
+    return scheduler.now() == 0 ? 0 : getArrivedCount() * 3_600_000.0 / scheduler.now();
+  }
+
+  // Every ride delivered so far, transfers as rides of their own, in call order
+  public List<Passenger> getDeliveredRides() {
+    List<Passenger> rides = new ArrayList<>();
+    for (ZonedController.Journey journey : journeys) {
+      for (Passenger passenger : journey.getLegs()) {
+        if (passenger.getArrival().isDone()) {
+          rides.add(passenger);
+        }
+      }
+    }
+    return rides;
+  }
+
+  // Hash of every ride's pickup, boarding and arrival times in call order. Runs of the
+  // same traffic with the same seed give the same value.
+  public long getFingerprint() {
+    long hash = 17;
+    for (ZonedController.Journey journey : journeys) {
+      for (Passenger passenger : journey.getLegs()) {
+        hash = hash * 31 + passenger.getPickupTime();
+        hash = hash * 31 + passenger.getBoardTime();
+        hash = hash * 31 + passenger.getArrivalTime();
+      }
+    }
+    return hash;
+  }
+
+  // Writes the whole run to the file: the clock, every journey and its passengers, each
+  // car with its riders and next move, the hall calls, waiting passengers, metrics and the
+  // calls still to come. Call between runUntil calls. The event log and trace are not saved.
+  public void checkpoint(Path file) throws IOException {
+    List<ElevatorController> controllers = building.getControllers();
+    List<Elevator> cars = building.getElevators();
+    Checkpoint.Writer out = new Checkpoint.Writer();
+    Checkpoint.writeHeader(out, building.getConfig());
+    out.putLong(scheduler.now());
+    Map<Passenger, Integer> ids = new IdentityHashMap<>();
+    out.putInt(journeys.size());
+    for (ZonedController.Journey journey : journeys) {
+      out.putInt(journey.getOrigin()).putInt(journey.getDestination()).putLong(journey.getRequestTime())
+          .putLong(journey.getArrivalTime()).putInt(journey.getLegs().size());
+      for (Passenger passenger : journey.getLegs()) {
+        ids.put(passenger, ids.size());
+        out.putInt(passenger.getStartFloor()).putInt(passenger.getDestinationFloor())
+            .putLong(passenger.getRequestTime()).putLong(passenger.getPickupTime()).putLong(passenger.getBoardTime())
+            .putBoolean(passenger.hasArrived()).putLong(passenger.getArrivalTime())
+            .putInt(passenger.getAssignedCar() == null ? -1 : cars.indexOf(passenger.getAssignedCar()));
+      }
+    }
+    for (ElevatorController controller : controllers) {
+      controller.save(out, ids);
+    }
+    // The events waiting on the clock, in the order they will run, so a restore queues them
+    // alike and events due at the same time still run in the same order
+    List<Runnable> pending = new ArrayList<>();
+    List<Long> due = new ArrayList<>();
+    scheduler.forEachPending((time, event) -> {
+      due.add(time);
+      pending.add(event);
+    });
+    out.putInt(pending.size());
+    for (int i = 0; i < pending.size(); i++) {
+      Runnable event = pending.get(i);
+      out.putLong(due.get(i));
+      if (event instanceof Call call) {
+        out.putInt(CALL_EVENT).putInt(call.startFloor).putInt(call.destinationFloor);
+      } else if (event instanceof ElevatorController.ParkTimer timer) {
+        out.putInt(PARK_EVENT).putInt(cars.indexOf(timer.elevator)).putLong(timer.idleVersion);
+      } else {
+        int car = indexOfPendingEvent(cars, event);
+        if (car < 0) {
+          throw new IllegalStateException("Cannot checkpoint at " + scheduler.now()
+              + " ms, an event the checkpoint does not cover is queued: " + event);
+        }
+        out.putInt(CAR_EVENT).putInt(car);
+      }
+    }
+    Checkpoint.write(out, file);
+  }
+
+  private static int indexOfPendingEvent(List<Elevator> cars, Runnable event) {
+    for (int i = 0; i < cars.size(); i++) {
+      if (cars.get(i).getPendingEvent() == event) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // A new simulation carrying on from a checkpoint. The config must describe the same
+  // building, floors and cars alike, but may change how it is run: the dispatch strategy,
+  // energy weight or parking policy, so one warmed-up state can fork several what-if runs.
+  // A parking policy other than the saved one starts without its history.
+  public static Simulation restore(Path file, BuildingConfig config) throws IOException {
+    ByteBuffer in = Checkpoint.read(file);
+    Checkpoint.checkHeader(in, config, file);
+    Simulation simulation = new Simulation(config);
+    simulation.scheduler.runUntil(in.getLong()); // nothing is queued yet, this only sets the clock
+    ZonedController building = simulation.building;
+    List<Elevator> cars = building.getElevators();
+
+    List<Passenger> passengers = new ArrayList<>();
+    for (int j = in.getInt(); j > 0; j--) {
+      int origin = in.getInt();
+      int destination = in.getInt();
+      long requestTime = in.getLong();
+      long arrivalTime = in.getLong();
+      List<Passenger> legs = new ArrayList<>();
+      for (int i = in.getInt(); i > 0; i--) {
+        Passenger passenger = new Passenger(in.getInt(), in.getInt(), in.getLong());
+        passenger.pickUp(in.getLong());
+        passenger.board(in.getLong());
+        boolean arrived = Checkpoint.getBoolean(in);
+        long dropOff = in.getLong();
+        if (arrived) {
+          passenger.arrive(dropOff);
+        }
+        int car = in.getInt();
+        if (car >= 0) {
+          passenger.assign(cars.get(car));
+        }
+        legs.add(passenger);
+      }
+      passengers.addAll(legs);
+      simulation.journeys.add(building.restoreJourney(origin, destination, requestTime, arrivalTime, legs));
+    }
+    Passenger[] byId = passengers.toArray(new Passenger[0]);
+    for (ElevatorController controller : building.getControllers()) {
+      controller.restore(in, byId);
+    }
+
+    long now = simulation.scheduler.now();
+    for (int events = in.getInt(); events > 0; events--) {
+      long delay = in.getLong() - now;
+      int kind = in.getInt();
+      if (kind == CALL_EVENT) {
+        simulation.scheduler.schedule(delay, simulation.new Call(in.getInt(), in.getInt()));
+      } else if (kind == PARK_EVENT) {
+        Elevator car = cars.get(in.getInt());
+        controllerOf(building, car).resumeParking(car, in.getLong(), delay);
+      } else {
+        cars.get(in.getInt()).resumeEvent();
+      }
+    }
+    return simulation;
+  }
+
+  private static ElevatorController controllerOf(ZonedController building, Elevator car) {
+    for (ElevatorController controller : building.getControllers()) {
+      if (controller.getElevators().contains(car)) {
+        return controller;
+      }
+    }
+    throw new IllegalArgumentException("Car " + car.getId() + " is in no zone");
+  }
+
+  public ZonedController getBuilding() {
+    return building;
+  }
+
+  public long now() {
+    return scheduler.now();
+  }
+
+  public void shutdown() {
+    building.shutdown();
+  }
+
+  // Runs the same traffic under every dispatch strategy and prints a comparison.
+  // Usage: java Simulation [hours] [seconds between calls] [building config]
+  public static void main(String[] args) throws IOException {
+    int hours = args.length > 0 ? Integer.parseInt(args[0]) : 24;
+    int callInterval = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+    BuildingConfig config = BuildingConfig.fromCommandLine(Arrays.copyOfRange(args, Math.min(2, args.length), args.length));
+    int numFloors = config.getNumFloors();
+
+    List<int[]> calls = new ArrayList<>(); // start and destination floor, one call every callInterval
+    Random random = new Random(42);
+    ZoneRouter router = new ZoneRouter(config);
+    long duration = hours * 3_600_000L;
+    for (long t = 0; t < duration; t += callInterval * 1000L) {
+      int start;
+      int destination;
+      do { // redraw trips no car or transfer can serve
+        start = 1 + random.nextInt(numFloors);
+        destination = 1 + random.nextInt(numFloors - 1);
+        if (destination >= start) {
+          destination++;
+        }
+      } while (router.route(start, destination) == null);
+      calls.add(new int[] {start, destination});
+    }
+
+    List<String> results = new ArrayList<>();
+    for (String strategy : DispatchStrategy.NAMES) {
+      Simulation simulation = new Simulation(config.withDispatchStrategy(strategy));
+      for (int i = 0; i < calls.size(); i++) {
+        simulation.addPassenger(i * callInterval * 1000L, calls.get(i)[0], calls.get(i)[1]);
+      }
+      long wallStart = System.nanoTime();
+      simulation.runUntil(duration);
+      long wallMillis = (System.nanoTime() - wallStart) / 1_000_000;
+      simulation.shutdown();
+
+      results.add(String.format("%-11s %10.1f %10.1f %12.1f %10d/%-6d %8.1f %8d %8.2f %10.1f %8d",
+          strategy, simulation.getAverageWaitMillis() / 1000, simulation.getWaitPercentileMillis(95) / 1000.0,
+          simulation.getThroughputPerHour(), simulation.getArrivedCount(), simulation.getPassengerCount(),
+          simulation.getDistanceKm(), simulation.getBuilding().getStartCount(), simulation.getEnergyKwh(),
+          simulation.getBuilding().getDispatchLatency().getMean(), wallMillis));
+    }
+
+    System.out.println();
+    System.out.println("Simulated " + hours + "h, one call every " + callInterval + "s");
+    System.out.printf("%-11s %10s %10s %12s %17s %8s %8s %8s %10s %8s%n",
+        "strategy", "avg wait s", "p95 wait s", "delivered/h", "delivered", "km", "starts", "kWh", "dispatch ms",
+        "wall ms");
+    for (String row : results) {
+      System.out.println(row);
+    }
+  }
+}
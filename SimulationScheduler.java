@@ -0,0 +1,84 @@
+import java.util.*;
+import java.util.function.BiConsumer;
+
+// Discrete-event scheduler with a virtual clock. Events run on the calling thread
+// in time order (FIFO for equal times), so nothing ever sleeps and the clock jumps
+// straight to the next event. Not thread-safe: drive it from a single thread.
+public class SimulationScheduler implements Scheduler {
+  private final PriorityQueue<Event> events;
+  private long now;
+  private long sequence;
+  private boolean running;
+
+  public SimulationScheduler() {
+    this.events = new PriorityQueue<>();
+    this.now = 0;
+    this.sequence = 0;
+    this.running = true;
+  }
+
+  @Override
+  public long now() {
+    return now;
+  }
+
+  @Override
+  public void schedule(long delayMillis, Runnable event) {
+    if (!running) {
+      return;
+    }
+    events.offer(new Event(now + Math.max(0, delayMillis), sequence++, event));
+  }
+
+  // Process every event due at or before endTime, then advance the clock to endTime
+  public void runUntil(long endTime) {
+    while (running && !events.isEmpty() && events.peek().time <= endTime) {
+      Event event = events.poll();
+      now = event.time;
+      event.action.run();
+    }
+    if (now < endTime) {
+      now = endTime;
+    }
+  }
+
+  // Visits the queued events with their due times in the order they will run
+  void forEachPending(BiConsumer<Long, Runnable> visitor) {
+    List<Event> pending = new ArrayList<>(events);
+    Collections.sort(pending);
+    for (Event event : pending) {
+      visitor.accept(event.time, event.action);
+    }
+  }
+
+  public int getPendingEventCount() {
+    return events.size();
+  }
+
+  @Override
+  public void shutdown() {
+    running = false;
+    events.clear();
+  }
+
+  private static final class Event implements Comparable<Event> {
+    private final long time;
+    private final long sequence;
+    private final Runnable action;
+
+    Event(long time, long sequence, Runnable action) {
+      this.time = time;
+      this.sequence = sequence;
+      this.action = action;
+    }
+
+    @Override
+    public int compareTo(Event other) {
+      int timeCompare = Long.compare(this.time, other.time);
+      if (timeCompare != 0) {
+        return timeCompare;
+      }
+      return Long.compare(this.sequence, other.sequence);
+    }
+  }
+}
@@ -0,0 +1,40 @@
+import javax.swing.AbstractListModel;
+
+// The last few status lines, for a JList. A ring buffer: once full, each new line drops
+// the oldest, so a long session never grows the log, and the list only renders the rows
+// on screen. Used from the event dispatch thread only.
+public class StatusLog extends AbstractListModel<String> {
+  private static final long serialVersionUID = 1L;
+  private final String[] lines;
+  private int first; // index in lines of the oldest line
+  private int size;
+
+  public StatusLog(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Status log needs room for at least 1 line, got " + capacity);
+    }
+    this.lines = new String[capacity];
+  }
+
+  public void add(String line) {
+    if (size == lines.length) {
+      lines[first] = null;
+      first = (first + 1) % lines.length;
+      size--;
+      fireIntervalRemoved(this, 0, 0);
+    }
+    lines[(first + size) % lines.length] = line;
+    size++;
+    fireIntervalAdded(this, size - 1, size - 1);
+  }
+
+  @Override
+  public int getSize() {
+    return size;
+  }
+
+  @Override
+  public String getElementAt(int index) {
+    return lines[(first + index) % lines.length];
+  }
+}
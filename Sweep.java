@@ -0,0 +1,199 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+// Capacity-planning sweep: runs every combination of the listed building and traffic settings
+// as an independent LoadTest and prints one comparison row per combination. The sweep file
+// is a building config in which any key may list several comma-separated values, plus the
+// traffic keys below, for example:
+//
+//   floors=20
+//   cars=2,3,4
+//   car.capacity=8,12
+//   dispatch=nearest,eta
+//   traffic=up_peak,lunch       traffic patterns, or day (default poisson)
+//   calls=600,1200              calls per hour (default 600)
+//   hours=1                     simulated hours per run (default 1)
+//
+// Served-floor lists (car.N.floors) already use commas, so they take a single value.
+// Each building runs single-threaded on its own virtual clock; the buildings themselves run
+// in parallel on the common fork/join pool, one per core.
+// Usage: java Sweep <sweep file> [csv file]
+public class Sweep {
+  private static final long TRAFFIC_SEED = 42; // same traffic as LoadTest for the same pattern
+  private static final String[] COLUMNS = {"passengers", "delivered", "delivered/h", "wait mean ms", "wait p50 ms",
+      "wait p95 ms", "wait p99 ms", "wait max ms", "ride mean ms", "ride p95 ms", "km", "starts", "kWh", "wall ms"};
+
+  private final List<String> sweptKeys; // keys with more than one value, in column order
+  private final List<Point> points;
+
+  public Sweep(Properties sweep) {
+    this.sweptKeys = new ArrayList<>();
+    List<Map<String, String>> combinations = new ArrayList<>();
+    combinations.add(new LinkedHashMap<>());
+    for (String key : new TreeSet<>(sweep.stringPropertyNames())) {
+      String listed = sweep.getProperty(key);
+      String[] values = key.endsWith(".floors") ? new String[] {listed} : listed.split(",");
+      if (values.length > 1) {
+        sweptKeys.add(key);
+      }
+      List<Map<String, String>> expanded = new ArrayList<>();
+      for (Map<String, String> combination : combinations) {
+        for (String value : values) {
+          Map<String, String> next = new LinkedHashMap<>(combination);
+          next.put(key, value.trim());
+          expanded.add(next);
+        }
+      }
+      combinations = expanded;
+    }
+    // Build every config up front so a bad value fails before anything runs
+    this.points = new ArrayList<>();
+    for (Map<String, String> combination : combinations) {
+      points.add(new Point(combination));
+    }
+  }
+
+  public int size() {
+    return points.size();
+  }
+
+  // Runs every point in parallel; rows come back in sweep order
+  public List<Row> run() {
+    return points.parallelStream().map(Point::run).collect(Collectors.toList());
+  }
+
+  public void printTable(List<Row> rows, PrintStream out) {
+    List<String> header = header();
+    List<List<String>> cells = new ArrayList<>();
+    for (Row row : rows) {
+      cells.add(row.cells(sweptKeys));
+    }
+    int[] widths = new int[header.size()];
+    for (int i = 0; i < widths.length; i++) {
+      widths[i] = header.get(i).length();
+      for (List<String> line : cells) {
+        widths[i] = Math.max(widths[i], line.get(i).length());
+      }
+    }
+    printLine(header, widths, out);
+    for (List<String> line : cells) {
+      printLine(line, widths, out);
+    }
+  }
+
+  public void writeCsv(List<Row> rows, Path file) throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+      writer.write(String.join(",", header()));
+      writer.newLine();
+      for (Row row : rows) {
+        writer.write(String.join(",", row.cells(sweptKeys)));
+        writer.newLine();
+      }
+    }
+  }
+
+  private List<String> header() {
+    List<String> header = new ArrayList<>(sweptKeys);
+    header.addAll(Arrays.asList(COLUMNS));
+    return header;
+  }
+
+  private static void printLine(List<String> cells, int[] widths, PrintStream out) {
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < cells.size(); i++) {
+      line.append(String.format("%" + widths[i] + "s  ", cells.get(i)));
+    }
+    out.println(line.toString().stripTrailing());
+  }
+
+  // One building and traffic combination
+  private static final class Point {
+    private final Map<String, String> settings;
+    private final BuildingConfig config;
+    private final String traffic;
+    private final double callsPerHour;
+    private final long durationMillis;
+
+    Point(Map<String, String> settings) {
+      this.settings = settings;
+      Properties properties = new Properties();
+      properties.putAll(settings);
+      // Buildings run side by side, so none of them writes an event log or trace file
+      this.config = BuildingConfig.fromProperties(properties).withEventLog(false, null).withTraceFile(null);
+      this.traffic = settings.getOrDefault("traffic", "poisson").toLowerCase();
+      if (!traffic.equals("day")) {
+        TrafficPattern.forName(traffic);
+      }
+      this.callsPerHour = number(settings, "calls", 600);
+      this.durationMillis = Math.round(number(settings, "hours", 1) * 3_600_000);
+    }
+
+    Row run() {
+      LoadTest test = new LoadTest(config, traffic, callsPerHour, durationMillis, TRAFFIC_SEED);
+      return new Row(settings, test.run(0, System.out));
+    }
+
+    private static double number(Map<String, String> settings, String key, double defaultValue) {
+      String value = settings.get(key);
+      if (value == null) {
+        return defaultValue;
+      }
+      try {
+        return Double.parseDouble(value);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid number for " + key + ": " + value);
+      }
+    }
+  }
+
+  public record Row(Map<String, String> settings, LoadTest.Result result) {
+
+    List<String> cells(List<String> sweptKeys) {
+      List<String> cells = new ArrayList<>();
+      for (String key : sweptKeys) {
+        cells.add(settings.get(key));
+      }
+      LatencyHistogram wait = result.waitTimes();
+      LatencyHistogram ride = result.rideTimes();
+      cells.add(Integer.toString(result.passengers()));
+      cells.add(Integer.toString(result.delivered()));
+      cells.add(String.format("%.1f", result.throughputPerHour()));
+      cells.add(String.format("%.0f", wait.getMean()));
+      cells.add(Long.toString(wait.getValueAtPercentile(50)));
+      cells.add(Long.toString(wait.getValueAtPercentile(95)));
+      cells.add(Long.toString(wait.getValueAtPercentile(99)));
+      cells.add(Long.toString(wait.getMax()));
+      cells.add(String.format("%.0f", ride.getMean()));
+      cells.add(Long.toString(ride.getValueAtPercentile(95)));
+      cells.add(String.format("%.1f", result.distanceKm()));
+      cells.add(Long.toString(result.starts()));
+      cells.add(String.format("%.2f", result.energyKwh()));
+      cells.add(Long.toString(result.wallMillis()));
+      return cells;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.err.println("Usage: java Sweep <sweep file> [csv file]");
+      System.exit(2);
+    }
+    Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(Paths.get(args[0]))) {
+      properties.load(reader);
+    }
+    Sweep sweep = new Sweep(properties);
+    System.out.printf("Running %d buildings on %d cores%n%n", sweep.size(), Runtime.getRuntime().availableProcessors());
+    long wallStart = System.nanoTime();
+    List<Row> rows = sweep.run();
+    long wallMillis = (System.nanoTime() - wallStart) / 1_000_000;
+    sweep.printTable(rows, System.out);
+    System.out.printf("%n%d buildings in %d ms%n", rows.size(), wallMillis);
+    if (args.length > 1) {
+      sweep.writeCsv(rows, Paths.get(args[1]));
+      System.out.println("Wrote " + args[1]);
+    }
+  }
+}
@@ -0,0 +1,75 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Which threads run cars, the dispatcher and passenger journeys. Virtual threads need
+// Java 21; they are looked up reflectively so the simulator still builds and runs on 17,
+// where VIRTUAL falls back to platform threads.
+public enum ThreadMode {
+  PLATFORM, VIRTUAL;
+
+  private static final ThreadFactory VIRTUAL_FACTORY = lookUpVirtualFactory();
+  private static final Method THREAD_PER_TASK = lookUpThreadPerTask();
+  private static final AtomicBoolean FALLBACK_REPORTED = new AtomicBoolean();
+
+  // True when this JVM can start virtual threads
+  public static boolean virtualThreadsAvailable() {
+    return VIRTUAL_FACTORY != null && THREAD_PER_TASK != null;
+  }
+
+  // Mode actually used: VIRTUAL degrades to PLATFORM when the JVM has no virtual threads
+  public ThreadMode effective() {
+    if (this == VIRTUAL && !virtualThreadsAvailable()) {
+      reportFallback();
+      return PLATFORM;
+    }
+    return this;
+  }
+
+  public ThreadFactory threadFactory() {
+    return effective() == VIRTUAL ? VIRTUAL_FACTORY : Executors.defaultThreadFactory();
+  }
+
+  // One new thread per task, for blocking work such as a passenger's journey
+  public ExecutorService newTaskExecutor() {
+    if (effective() == PLATFORM) {
+      return Executors.newCachedThreadPool();
+    }
+    try {
+      return (ExecutorService) THREAD_PER_TASK.invoke(null, VIRTUAL_FACTORY);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Cannot create a virtual thread executor", e);
+    }
+  }
+
+  public static ThreadMode forName(String name) {
+    try {
+      return valueOf(name.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown thread mode '" + name + "', expected platform or virtual");
+    }
+  }
+
+  private static ThreadFactory lookUpVirtualFactory() {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  private static Method lookUpThreadPerTask() {
+    try {
+      return Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  private static void reportFallback() {
+    if (FALLBACK_REPORTED.compareAndSet(false, true)) {
+      System.err.println("Virtual threads need Java 21 or later, running on platform threads");
+    }
+  }
+}
@@ -0,0 +1,144 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.*;
+
+// Passenger calls recorded from a run, for replaying it on a virtual clock. Each call is a
+// hall call at the origin floor at the given time, followed by the car call for the
+// destination once the passenger is on board. Calls are recorded when they are made, so
+// passengers still waiting when the run ends are kept too. Stored as text: a header line,
+// the seed the controller broke ties with, for a run on a virtual clock the outcome a replay
+// must reproduce, then one "time origin destination" line per call.
+public class Trace {
+  private static final String HEADER = "elevator-trace 1";
+
+  private final long seed;
+  private final Queue<TrafficGenerator.Trip> calls; // in recording order
+  private final AtomicInteger delivered;
+  private final AtomicLong rideDigest; // sum of ride() over the passengers delivered
+  private volatile Outcome outcome; // null until the run ends, and for runs in real time
+
+  // When the recorded run ended, and the passengers it had delivered by then
+  public record Outcome(long endTime, int delivered, long rideDigest) {
+  }
+
+  public Trace(long seed) {
+    this(seed, List.of(), null);
+  }
+
+  public Trace(long seed, List<TrafficGenerator.Trip> calls, Outcome outcome) {
+    this.seed = seed;
+    this.calls = new ConcurrentLinkedQueue<>(calls);
+    this.delivered = new AtomicInteger();
+    this.rideDigest = new AtomicLong();
+    this.outcome = outcome;
+  }
+
+  // Safe to call from any thread
+  void record(long time, int origin, int destination) {
+    calls.add(new TrafficGenerator.Trip(time, origin, destination));
+  }
+
+  // Safe to call from any car's thread
+  void delivered(Passenger passenger) {
+    delivered.incrementAndGet();
+    rideDigest.addAndGet(ride(passenger));
+  }
+
+  // The run ended at the given time of a virtual clock, so a replay can be held to it
+  void finish(long endTime) {
+    outcome = new Outcome(endTime, delivered.get(), rideDigest.get());
+  }
+
+  public Outcome getOutcome() {
+    return outcome;
+  }
+
+  // Hash of one delivered ride's floors and times. Rides are summed, so the digest does not
+  // depend on the order cars delivered them in.
+  public static long ride(Passenger passenger) {
+    long hash = 17;
+    hash = hash * 31 + passenger.getStartFloor();
+    hash = hash * 31 + passenger.getDestinationFloor();
+    hash = hash * 31 + passenger.getRequestTime();
+    hash = hash * 31 + passenger.getPickupTime();
+    hash = hash * 31 + passenger.getBoardTime();
+    hash = hash * 31 + passenger.getArrivalTime();
+    return hash ^ (hash >>> 29);
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  // Calls in time order; calls made in the same millisecond keep the order they were made in
+  public List<TrafficGenerator.Trip> getCalls() {
+    List<TrafficGenerator.Trip> sorted = new ArrayList<>(calls);
+    sorted.sort(Comparator.comparingLong(TrafficGenerator.Trip::time));
+    return sorted;
+  }
+
+  public void write(Path file) throws IOException {
+    try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+      writer.write(HEADER);
+      writer.newLine();
+      writer.write("seed " + seed);
+      writer.newLine();
+      if (outcome != null) {
+        writer.write("outcome " + outcome.endTime() + " " + outcome.delivered() + " " + outcome.rideDigest());
+        writer.newLine();
+      }
+      for (TrafficGenerator.Trip call : getCalls()) {
+        writer.write(call.time() + " " + call.origin() + " " + call.destination());
+        writer.newLine();
+      }
+    }
+  }
+
+  public static Trace read(Path file) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(file)) {
+      if (!HEADER.equals(reader.readLine())) {
+        throw new IllegalArgumentException(file + " is not an elevator trace");
+      }
+      String seedLine = reader.readLine();
+      if (seedLine == null || !seedLine.startsWith("seed ")) {
+        throw new IllegalArgumentException(file + " has no seed line");
+      }
+      long seed = parse(file, 2, seedLine.substring(5));
+      Outcome outcome = null;
+      List<TrafficGenerator.Trip> calls = new ArrayList<>();
+      int lineNumber = 2;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.isBlank()) {
+          continue;
+        }
+        String[] fields = line.trim().split("\\s+");
+        if (fields[0].equals("outcome") && lineNumber == 3) {
+          if (fields.length != 4) {
+            throw new IllegalArgumentException(file + ":" + lineNumber + ": expected end time, delivered and digest");
+          }
+          outcome = new Outcome(parse(file, lineNumber, fields[1]), (int) parse(file, lineNumber, fields[2]),
+              parse(file, lineNumber, fields[3]));
+          continue;
+        }
+        if (fields.length != 3) {
+          throw new IllegalArgumentException(file + ":" + lineNumber + ": expected time, origin and destination");
+        }
+        calls.add(new TrafficGenerator.Trip(parse(file, lineNumber, fields[0]),
+            (int) parse(file, lineNumber, fields[1]), (int) parse(file, lineNumber, fields[2])));
+      }
+      return new Trace(seed, calls, outcome);
+    }
+  }
+
+  private static long parse(Path file, int lineNumber, String value) {
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(file + ":" + lineNumber + ": invalid number " + value);
+    }
+  }
+}
@@ -0,0 +1,68 @@
+import java.util.*;
+
+// Builds passenger trips for a building. Calls arrive as a Poisson process (exponential
+// gaps at the given mean rate) and each trip's floors follow a TrafficPattern. Trips that
+// no car can serve, directly or by changing at a transfer floor, are redrawn, so every
+// generated passenger can be delivered.
+public class TrafficGenerator {
+  private static final int MAX_DRAWS = 1000;
+  private static final TrafficPattern[] DAY = {
+    TrafficPattern.UP_PEAK, TrafficPattern.INTERFLOOR, TrafficPattern.LUNCH,
+    TrafficPattern.INTERFLOOR, TrafficPattern.DOWN_PEAK
+  };
+
+  private final BuildingConfig config;
+  private final ZoneRouter router;
+  private final Random random;
+
+  public TrafficGenerator(BuildingConfig config, long seed) {
+    this.config = config;
+    this.router = new ZoneRouter(config);
+    this.random = new Random(seed);
+  }
+
+  // Trips with call times in startMillis..startMillis + durationMillis, oldest first
+  public List<Trip> generate(TrafficPattern pattern, double callsPerHour, long startMillis, long durationMillis) {
+    if (callsPerHour <= 0) {
+      throw new IllegalArgumentException("Calls per hour must be positive: " + callsPerHour);
+    }
+    List<Trip> trips = new ArrayList<>();
+    double meanGap = 3_600_000.0 / callsPerHour;
+    long end = startMillis + durationMillis;
+    long time = startMillis + nextGap(meanGap);
+    while (time < end) {
+      int[] floors = servedTrip(pattern);
+      trips.add(new Trip(time, floors[0], floors[1]));
+      time += nextGap(meanGap);
+    }
+    return trips;
+  }
+
+  // A working day squeezed into the duration: up-peak, interfloor, lunch, interfloor
+  // and down-peak, each taking an equal share of the time
+  public List<Trip> generateDay(double callsPerHour, long durationMillis) {
+    List<Trip> trips = new ArrayList<>();
+    long phase = durationMillis / DAY.length;
+    for (int i = 0; i < DAY.length; i++) {
+      trips.addAll(generate(DAY[i], callsPerHour, i * phase, phase));
+    }
+    return trips;
+  }
+
+  private long nextGap(double meanGap) {
+    return Math.round(-Math.log(1 - random.nextDouble()) * meanGap);
+  }
+
+  private int[] servedTrip(TrafficPattern pattern) {
+    for (int draw = 0; draw < MAX_DRAWS; draw++) {
+      int[] floors = pattern.trip(random, config.getNumFloors());
+      if (router.route(floors[0], floors[1]) != null) {
+        return floors;
+      }
+    }
+    throw new IllegalArgumentException("No car serves the trips of traffic pattern " + pattern);
+  }
+
+  public record Trip(long time, int origin, int destination) {
+  }
+}
@@ -0,0 +1,53 @@
+import java.util.*;
+
+// Where passengers travel from and to. Floor 1 is the lobby. Each pattern sets the share
+// of trips leaving the lobby and heading to it; the rest run between two upper floors.
+public enum TrafficPattern {
+  POISSON(0, 0), // origin and destination drawn uniformly over every floor
+  UP_PEAK(0.85, 0.05), // morning arrivals
+  DOWN_PEAK(0.05, 0.85), // evening departures
+  LUNCH(0.4, 0.4), // out to lunch and back
+  INTERFLOOR(0, 0); // meetings between upper floors
+
+  static final int LOBBY = 1;
+
+  private final double fromLobby;
+  private final double toLobby;
+
+  TrafficPattern(double fromLobby, double toLobby) {
+    this.fromLobby = fromLobby;
+    this.toLobby = toLobby;
+  }
+
+  // Origin and destination of one trip, never the same floor
+  int[] trip(Random random, int numFloors) {
+    if (this == POISSON || numFloors < 3) {
+      int origin = 1 + random.nextInt(numFloors);
+      return new int[] {origin, otherFloor(random, 1, numFloors, origin)};
+    }
+    double draw = random.nextDouble();
+    if (draw < fromLobby) {
+      return new int[] {LOBBY, 2 + random.nextInt(numFloors - 1)};
+    }
+    if (draw < fromLobby + toLobby) {
+      return new int[] {2 + random.nextInt(numFloors - 1), LOBBY};
+    }
+    int origin = 2 + random.nextInt(numFloors - 1);
+    return new int[] {origin, otherFloor(random, 2, numFloors, origin)};
+  }
+
+  // Uniform floor in lowest..highest other than the excluded one
+  private static int otherFloor(Random random, int lowest, int highest, int excluded) {
+    int floor = lowest + random.nextInt(highest - lowest);
+    return floor >= excluded ? floor + 1 : floor;
+  }
+
+  public static TrafficPattern forName(String name) {
+    try {
+      return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown traffic pattern '" + name + "', expected one of "
+          + Arrays.toString(values()).toLowerCase());
+    }
+  }
+}
@@ -0,0 +1,139 @@
+import java.util.*;
+
+// Splits the cars into zones and plans trips across them. A zone is a bank of cars serving
+// exactly the same floors: a low-rise bank, a high-rise bank starting at a sky lobby, an
+// express shuttle between the lobby and the sky lobby. A trip no zone serves end to end is
+// routed through transfer floors two zones share, with as few legs as possible; ties go to
+// zones serving fewer floors, so short trips stay in the local bank. zoning= decides only
+// whether each zone gets its own controller (banks) or all of them share one (shared).
+public class ZoneRouter {
+  public static final List<String> NAMES = List.of("shared", "banks");
+
+  private final List<Zone> zones; // by index, in the order of their first car
+  private final List<Zone> bySize; // fewest floors first
+
+  public ZoneRouter(BuildingConfig config) {
+    Map<BitSet, Zone> byFloors = new LinkedHashMap<>();
+    List<BuildingConfig.CarConfig> cars = config.getCars();
+    for (int i = 0; i < cars.size(); i++) {
+      BitSet floors = cars.get(i).getServedFloors();
+      Zone zone = byFloors.get(floors);
+      if (zone == null) {
+        zone = new Zone(byFloors.size(), floors);
+        byFloors.put(floors, zone);
+      }
+      zone.cars.add(i);
+    }
+    this.zones = List.copyOf(byFloors.values());
+    List<Zone> sorted = new ArrayList<>(zones);
+    sorted.sort(Comparator.comparingInt((Zone zone) -> zone.floors.cardinality()).thenComparingInt(zone -> zone.index));
+    this.bySize = List.copyOf(sorted);
+  }
+
+  public List<Zone> getZones() {
+    return zones;
+  }
+
+  // The legs of the trip in order, or null if no chain of zones connects the two floors
+  public List<Leg> route(int origin, int destination) {
+    // Breadth-first over zones, from every zone stopping at the origin
+    Zone[] previous = new Zone[zones.size()];
+    boolean[] seen = new boolean[zones.size()];
+    Deque<Zone> queue = new ArrayDeque<>();
+    for (Zone zone : bySize) {
+      if (zone.serves(origin)) {
+        seen[zone.index] = true;
+        queue.add(zone);
+      }
+    }
+    while (!queue.isEmpty()) {
+      Zone zone = queue.poll();
+      if (zone.serves(destination)) {
+        return legs(zone, previous, origin, destination);
+      }
+      for (Zone next : bySize) {
+        if (!seen[next.index] && zone.floors.intersects(next.floors)) {
+          seen[next.index] = true;
+          previous[next.index] = zone;
+          queue.add(next);
+        }
+      }
+    }
+    return null;
+  }
+
+  private static List<Leg> legs(Zone last, Zone[] previous, int origin, int destination) {
+    List<Zone> path = new ArrayList<>();
+    for (Zone zone = last; zone != null; zone = previous[zone.index]) {
+      path.add(zone);
+    }
+    Collections.reverse(path);
+    List<Leg> legs = new ArrayList<>(path.size());
+    int from = origin;
+    for (int i = 0; i < path.size(); i++) {
+      int to = i == path.size() - 1 ? destination : transferFloor(path.get(i), path.get(i + 1), from, destination);
+      legs.add(new Leg(path.get(i).index, from, to));
+      from = to;
+    }
+    return legs;
+  }
+
+  // The floor both zones serve that keeps the whole trip shortest
+  private static int transferFloor(Zone zone, Zone next, int from, int destination) {
+    BitSet shared = zone.getFloors();
+    shared.and(next.floors);
+    int best = -1;
+    for (int floor = shared.nextSetBit(0); floor >= 0; floor = shared.nextSetBit(floor + 1)) {
+      if (floor != from && (best < 0
+          || Math.abs(floor - from) + Math.abs(destination - floor) < Math.abs(best - from) + Math.abs(destination - best))) {
+        best = floor;
+      }
+    }
+    return best;
+  }
+
+  public static final class Zone {
+    private final int index;
+    private final BitSet floors;
+    private final List<Integer> cars; // indexes into BuildingConfig.getCars()
+
+    Zone(int index, BitSet floors) {
+      this.index = index;
+      this.floors = floors;
+      this.cars = new ArrayList<>();
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    // Copy of the floors the zone's cars serve
+    public BitSet getFloors() {
+      return (BitSet) floors.clone();
+    }
+
+    public List<Integer> getCars() {
+      return Collections.unmodifiableList(cars);
+    }
+
+    public boolean serves(int floor) {
+      return floor >= 1 && floors.get(floor);
+    }
+
+    // Served floors as ranges, such as "1, 21-40"
+    @Override
+    public String toString() {
+      StringJoiner ranges = new StringJoiner(", ");
+      for (int from = floors.nextSetBit(0); from >= 0; from = floors.nextSetBit(from + 1)) {
+        int to = floors.nextClearBit(from) - 1;
+        ranges.add(from == to ? Integer.toString(from) : from + "-" + to);
+        from = to;
+      }
+      return ranges.toString();
+    }
+  }
+
+  // One ride: in a car of the zone, from one floor to another
+  public record Leg(int zone, int from, int to) {
+  }
+}
@@ -0,0 +1,312 @@
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+// Runs a building as zones (see ZoneRouter): one ElevatorController per zone under
+// zoning=banks, each with its own scheduler threads in real time so a busy zone never
+// holds up another, or one controller for every car under zoning=shared. A simulation
+// passes one virtual clock that all the controllers share. Passengers travel as journeys
+// that ride each leg of their route and change cars at the transfer floors.
+public class ZonedController {
+  private final BuildingConfig config;
+  private final ZoneRouter router;
+  private final List<ElevatorController> controllers;
+  private final ElevatorController[] controllerForZone; // by zone index
+  private final Scheduler clock; // journey times and reports, on the first controller's scheduler
+  private volatile boolean running;
+
+  // Real time, every controller on its own threads
+  public ZonedController(BuildingConfig config) {
+    this(config, null);
+  }
+
+  // All controllers on the given scheduler, or each on its own real-time one if null
+  public ZonedController(BuildingConfig config, Scheduler scheduler) {
+    this.config = config;
+    this.router = new ZoneRouter(config);
+    List<ZoneRouter.Zone> zones = router.getZones();
+    this.controllers = new ArrayList<>();
+    this.controllerForZone = new ElevatorController[zones.size()];
+    if (config.getZoning().equals("shared") || zones.size() == 1) {
+      ElevatorController controller = scheduler == null
+          ? new ElevatorController(config) : new ElevatorController(config, scheduler);
+      controllers.add(controller);
+      Arrays.fill(controllerForZone, controller);
+    } else {
+      for (ZoneRouter.Zone zone : zones) {
+        List<BuildingConfig.CarConfig> cars = new ArrayList<>();
+        int[] carIds = new int[zone.getCars().size()];
+        for (int c = 0; c < carIds.length; c++) {
+          int car = zone.getCars().get(c);
+          cars.add(config.getCars().get(car));
+          carIds[c] = car + 1; // the id it has in the building
+        }
+        // A trace records single rides, so zones leave it off; each zone logs to its own file
+        BuildingConfig zoneConfig = config.withCars(cars)
+            .withEventLog(config.isConsoleLog(), withSuffix(config.getLogFile(), ".zone" + (zone.getIndex() + 1)))
+            .withTraceFile(null);
+        Scheduler zoneScheduler = scheduler != null ? scheduler
+            : new RealTimeScheduler(zoneConfig.getNumCars() + 1, zoneConfig.getThreadMode()); // +1 for dispatcher
+        ElevatorController controller = new ElevatorController(zoneConfig, zoneScheduler, carIds);
+        controllers.add(controller);
+        controllerForZone[zone.getIndex()] = controller;
+      }
+    }
+    this.clock = controllers.get(0).getScheduler();
+    this.running = true;
+  }
+
+  // The file name with the suffix before its extension: events.jsonl becomes events.zone1.jsonl
+  static String withSuffix(String file, String suffix) {
+    if (file == null) {
+      return null;
+    }
+    int dot = file.lastIndexOf('.');
+    return dot > 0 ? file.substring(0, dot) + suffix + file.substring(dot) : file + suffix;
+  }
+
+  // Starts a trip: the first leg's hall call (or trip request under destination dispatch)
+  // is made now, each later one when the passenger gets off at the transfer floor
+  public Journey travel(int origin, int destination) {
+    List<ZoneRouter.Leg> route = router.route(origin, destination);
+    if (route == null) {
+      throw new IllegalArgumentException("No zone or transfer connects floor " + origin + " and floor " + destination);
+    }
+    Journey journey = new Journey(origin, destination, clock.now());
+    startLeg(journey, route, 0);
+    return journey;
+  }
+
+  private void startLeg(Journey journey, List<ZoneRouter.Leg> route, int index) {
+    ZoneRouter.Leg leg = route.get(index);
+    ElevatorController controller = controllerForZone[leg.zone()];
+    Passenger passenger = new Passenger(leg.from(), leg.to(), controller.getScheduler().now());
+    journey.legs.add(passenger);
+    if (controller.isDestinationDispatch()) {
+      controller.requestTrip(passenger);
+    } else {
+      controller.requestPickup(leg.from(), passenger.getDirection(), leg.to());
+    }
+    controller.boardElevator(passenger);
+    followLeg(journey, route, index, passenger);
+  }
+
+  // Once the leg's passenger gets off, starts the next leg or ends the journey
+  private void followLeg(Journey journey, List<ZoneRouter.Leg> route, int index, Passenger passenger) {
+    passenger.getArrival().thenRun(() -> {
+      if (index == route.size() - 1) {
+        journey.arrive(clock.now());
+      } else {
+        // The car is still in the middle of its stop, so the next call is made as an event of its own
+        ElevatorController next = controllerForZone[route.get(index + 1).zone()];
+        next.getScheduler().schedule(0, () -> startLeg(journey, route, index + 1));
+      }
+    });
+  }
+
+  // Rebuilds a journey saved by a checkpoint from the legs it had started, their passengers
+  // already waiting or riding in the restored controllers. An arrival time of -1 means the
+  // last leg is still under way.
+  Journey restoreJourney(int origin, int destination, long requestTime, long arrivalTime, List<Passenger> legs) {
+    List<ZoneRouter.Leg> route = router.route(origin, destination);
+    if (route == null || legs.isEmpty() || legs.size() > route.size()) {
+      throw new IllegalArgumentException("Cannot restore a journey of " + legs.size() + " legs from floor " + origin
+          + " to floor " + destination);
+    }
+    Journey journey = new Journey(origin, destination, requestTime);
+    journey.legs.addAll(legs);
+    if (arrivalTime >= 0) {
+      journey.arrive(arrivalTime);
+    } else {
+      followLeg(journey, route, legs.size() - 1, legs.get(legs.size() - 1));
+    }
+    return journey;
+  }
+
+  public ZoneRouter getRouter() {
+    return router;
+  }
+
+  // One per zone under zoning=banks, otherwise the single shared controller
+  public List<ElevatorController> getControllers() {
+    return controllers;
+  }
+
+  public ElevatorController getController(ZoneRouter.Zone zone) {
+    return controllerForZone[zone.getIndex()];
+  }
+
+  public BuildingConfig getConfig() {
+    return config;
+  }
+
+  // Every car, zone by zone
+  public List<Elevator> getElevators() {
+    List<Elevator> elevators = new ArrayList<>();
+    for (ElevatorController controller : controllers) {
+      elevators.addAll(controller.getElevators());
+    }
+    return elevators;
+  }
+
+  // Rides across all zones; a journey with a transfer counts once per leg
+  public LatencyHistogram getHallCallWait() {
+    return merged(JourneyMetrics::getHallCallWait);
+  }
+
+  public LatencyHistogram getRide() {
+    return merged(JourneyMetrics::getRide);
+  }
+
+  public LatencyHistogram getDispatchLatency() {
+    return merged(JourneyMetrics::getDispatchLatency);
+  }
+
+  private LatencyHistogram merged(Function<JourneyMetrics, LatencyHistogram> histogram) {
+    if (controllers.size() == 1) {
+      return histogram.apply(controllers.get(0).getMetrics());
+    }
+    LatencyHistogram total = new LatencyHistogram();
+    for (ElevatorController controller : controllers) {
+      total.add(histogram.apply(controller.getMetrics()));
+    }
+    return total;
+  }
+
+  // Door openings across every car
+  public long getStopCount() {
+    long stops = 0;
+    for (ElevatorController controller : controllers) {
+      for (Elevator elevator : controller.getElevators()) {
+        stops += elevator.getStopCount();
+      }
+    }
+    return stops;
+  }
+
+  // Times any car set off from rest or reversed
+  public long getStartCount() {
+    long starts = 0;
+    for (Elevator elevator : getElevators()) {
+      starts += elevator.getStartCount();
+    }
+    return starts;
+  }
+
+  public double getDistanceMetres() {
+    double metres = 0;
+    for (Elevator elevator : getElevators()) {
+      metres += elevator.getDistanceMetres();
+    }
+    return metres;
+  }
+
+  // Estimated energy the fleet has drawn, net of regeneration
+  public double getEnergyJoules() {
+    double joules = 0;
+    for (Elevator elevator : getElevators()) {
+      joules += elevator.getEnergyJoules();
+    }
+    return joules;
+  }
+
+  // Prints the report every period of the clock until shutdown
+  public void startMetricsReport(long periodMillis, PrintStream out) {
+    if (periodMillis <= 0) {
+      throw new IllegalArgumentException("Report period must be positive: " + periodMillis);
+    }
+    clock.schedule(periodMillis, () -> {
+      if (running) {
+        out.print(report(clock.now()));
+        startMetricsReport(periodMillis, out);
+      }
+    });
+  }
+
+  // Every controller's metrics report, each headed by its zone when there is more than one
+  public String report(long now) {
+    if (controllers.size() == 1) {
+      return controllers.get(0).getMetrics().report(controllers.get(0).getElevators(), now);
+    }
+    StringBuilder out = new StringBuilder();
+    for (ZoneRouter.Zone zone : router.getZones()) {
+      ElevatorController controller = controllerForZone[zone.getIndex()];
+      out.append(String.format("Zone %d, floors %s, %d cars%n", zone.getIndex() + 1, zone, zone.getCars().size()));
+      out.append(controller.getMetrics().report(controller.getElevators(), now));
+    }
+    return out.toString();
+  }
+
+  public void shutdown() {
+    running = false;
+    for (ElevatorController controller : controllers) {
+      controller.shutdown();
+    }
+  }
+
+  // A passenger's trip from origin to destination, one Passenger per leg
+  public static final class Journey {
+    private final int origin;
+    private final int destination;
+    private final long requestTime;
+    private final List<Passenger> legs; // legs started so far, in order
+    private final CompletableFuture<Journey> arrival;
+    private volatile long arrivalTime;
+
+    Journey(int origin, int destination, long requestTime) {
+      this.origin = origin;
+      this.destination = destination;
+      this.requestTime = requestTime;
+      this.legs = new CopyOnWriteArrayList<>();
+      this.arrival = new CompletableFuture<>();
+      this.arrivalTime = -1;
+    }
+
+    private void arrive(long time) {
+      arrivalTime = time;
+      arrival.complete(this);
+    }
+
+    public int getOrigin() {
+      return origin;
+    }
+
+    public int getDestination() {
+      return destination;
+    }
+
+    public long getRequestTime() {
+      return requestTime;
+    }
+
+    // Arrival at the destination, -1 until then
+    public long getArrivalTime() {
+      return arrivalTime;
+    }
+
+    public List<Passenger> getLegs() {
+      return Collections.unmodifiableList(legs);
+    }
+
+    public int getTransfers() {
+      return Math.max(0, legs.size() - 1);
+    }
+
+    public boolean hasArrived() {
+      return arrival.isDone();
+    }
+
+    public CompletableFuture<Journey> getArrival() {
+      return arrival;
+    }
+
+    public void waitForArrival() throws InterruptedException {
+      try {
+        arrival.get();
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Journey failed", e.getCause());
+      }
+    }
+  }
+}
@@ -0,0 +1,26 @@
+final class BenchmarkSupport {
+  static final ElevatorListener NO_LISTENER = new ElevatorListener() {
+    @Override
+    public void onStateChanged(Elevator elevator) {
+    }
+
+    @Override
+    public void onArrived(Elevator elevator, int floor, Elevator.Direction heading, int freeSeats) {
+    }
+
+    @Override
+    public void onDeparted(Elevator elevator) {
+    }
+
+    @Override
+    public void onBoarded(Elevator elevator, Passenger passenger) {
+    }
+
+    @Override
+    public void onDroppedOff(Elevator elevator, Passenger passenger) {
+    }
+  };
+
+  private BenchmarkSupport() {
+  }
+}
@@ -0,0 +1,103 @@
+import java.util.*;
+
+public class DispatchWorkload extends benchmarks.DispatchBenchmark.Workload {
+  private ElevatorController controller;
+  private List<Elevator> elevators;
+  private PickupRequest[] requests;
+  private PriorityQueue<PickupRequest> queue;
+  private HallCallTable table;
+  private int[] tableSlots;
+  private int next;
+
+  @Override
+  public void setup(int numElevators, int floors, int queueDepth) {
+    Random random = new Random(7);
+    SimulationScheduler scheduler = new SimulationScheduler();
+    controller = new ElevatorController(BuildingConfig.uniform(floors, numElevators).withEventLog(false, null),
+        scheduler);
+    elevators = controller.getElevators();
+
+    // Spread the fleet over the building: most cars moving with a few stops queued, some idle
+    for (Elevator elevator : elevators) {
+      if (random.nextInt(4) != 0) {
+        elevator.addDestination(1 + random.nextInt(floors));
+      }
+    }
+    scheduler.runUntil(floors * 500L);
+    for (Elevator elevator : elevators) {
+      if (random.nextInt(4) != 0) {
+        for (int i = 0; i < 3; i++) {
+          elevator.addDestination(1 + random.nextInt(floors));
+        }
+      }
+    }
+    scheduler.runUntil(floors * 500L + 1500);
+
+    requests = new PickupRequest[queueDepth];
+    for (int i = 0; i < queueDepth; i++) {
+      int floor = 1 + random.nextInt(floors);
+      Elevator.Direction direction = floor == floors || (floor > 1 && random.nextBoolean())
+          ? Elevator.Direction.DOWN : Elevator.Direction.UP;
+      requests[i] = new PickupRequest(floor, direction, random.nextInt(1000));
+      // Queued in the controller's table; planning a round leaves them pending for the next
+      controller.adoptPickup(requests[i]);
+    }
+    queue = new PriorityQueue<>(queueDepth);
+    table = new HallCallTable(controller.getConfig());
+    tableSlots = new int[table.size()];
+  }
+
+  @Override
+  public int planDispatch() {
+    return controller.planDispatch();
+  }
+
+  @Override
+  public boolean canPickup() {
+    int i = next++;
+    PickupRequest request = requests[i % requests.length];
+    return elevators.get(i % elevators.size()).canPickup(request.getFloor(), request.getDirection());
+  }
+
+  @Override
+  public int getNextDestination() {
+    Elevator elevator = elevators.get(next++ % elevators.size());
+    elevator.getLock().lock();
+    try {
+      return elevator.getNextDestination();
+    } finally {
+      elevator.getLock().unlock();
+    }
+  }
+
+  @Override
+  public int orderPickupQueue() {
+    for (PickupRequest request : requests) {
+      queue.offer(request);
+    }
+    int floorSum = 0;
+    while (!queue.isEmpty()) {
+      floorSum += queue.poll().getFloor();
+    }
+    return floorSum;
+  }
+
+  @Override
+  public int orderHallCallTable() {
+    for (PickupRequest request : requests) {
+      int slot = table.slot(request.getFloor(), request.getDirection(), request.getDestinationFloor());
+      if (table.isOpen(slot)) {
+        table.addCaller(slot);
+      } else {
+        table.open(slot, request.getTimestamp(), request.getTiebreaker(), request.getDestinationFloor(), 1);
+      }
+    }
+    int floorSum = 0;
+    int pending = table.pendingSlots(tableSlots);
+    for (int i = 0; i < pending; i++) {
+      floorSum += table.floor(tableSlots[i]);
+      table.free(tableSlots[i]);
+    }
+    return floorSum;
+  }
+}
@@ -0,0 +1,64 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+public class JourneyWorkload extends benchmarks.JourneyBenchmark.Workload {
+  private static final int FLOORS = 10;
+  private static final int CARS = 4;
+  private static final int CAPACITY = 8;
+
+  private int[][] trips;
+  private ThreadMode mode;
+  private ElevatorController controller;
+  private ExecutorService journeys;
+
+  @Override
+  public void setup(int passengers, String threads) {
+    mode = ThreadMode.forName(threads);
+    if (mode == ThreadMode.VIRTUAL && !ThreadMode.virtualThreadsAvailable()) {
+      throw new IllegalStateException("Virtual threads need Java 21 or later, this JVM is "
+          + System.getProperty("java.version"));
+    }
+    Random random = new Random(11);
+    trips = new int[passengers][];
+    for (int i = 0; i < passengers; i++) {
+      int start = 1 + random.nextInt(FLOORS);
+      int destination = 1 + random.nextInt(FLOORS - 1);
+      trips[i] = new int[] {start, destination >= start ? destination + 1 : destination};
+    }
+    // Passengers a full car turns away call again, so every journey completes at normal capacity
+    List<BuildingConfig.CarConfig> cars = new ArrayList<>();
+    for (int i = 0; i < CARS; i++) {
+      cars.add(new BuildingConfig.CarConfig(CAPACITY, 1, 1, 1, FLOORS));
+    }
+    BuildingConfig config = new BuildingConfig(FLOORS, cars, "nearest", mode).withEventLog(false, null);
+    controller = new ElevatorController(config);
+    journeys = mode.newTaskExecutor();
+  }
+
+  @Override
+  public int run() throws InterruptedException {
+    CountDownLatch done = new CountDownLatch(trips.length);
+    for (int[] trip : trips) {
+      journeys.execute(() -> {
+        try {
+          Passenger passenger = new Passenger(trip[0], trip[1], controller.getScheduler().now());
+          controller.requestPickup(trip[0], passenger.getDirection(), trip[1]);
+          controller.waitToBoard(passenger);
+          passenger.waitForArrival();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } finally {
+          done.countDown();
+        }
+      });
+    }
+    done.await();
+    return trips.length;
+  }
+
+  @Override
+  public void tearDown() {
+    journeys.shutdownNow();
+    controller.shutdown();
+  }
+}
@@ -0,0 +1,68 @@
+import java.util.*;
+
+public class ShardedDispatchWorkload extends benchmarks.ShardedDispatchBenchmark.Workload {
+  private List<ElevatorController> controllers;
+  private ShardedController sharded;
+  private PickupRequest[] requests;
+  private int next;
+
+  @Override
+  public void setup(int numElevators, int floors, int carsPerShard, int queueDepth) {
+    Random random = new Random(7);
+    SimulationScheduler scheduler = new SimulationScheduler();
+    BuildingConfig config = BuildingConfig.uniform(floors, numElevators).withEventLog(false, null);
+    List<Elevator> elevators;
+    if (carsPerShard == 0) {
+      ElevatorController controller = new ElevatorController(config, scheduler);
+      controllers = List.of(controller);
+      elevators = controller.getElevators();
+    } else {
+      sharded = new ShardedController(config, scheduler, carsPerShard);
+      controllers = sharded.getShards();
+      elevators = sharded.getElevators();
+    }
+
+    // Spread the fleet over the building as DispatchWorkload does
+    for (Elevator elevator : elevators) {
+      if (random.nextInt(4) != 0) {
+        elevator.addDestination(1 + random.nextInt(floors));
+      }
+    }
+    scheduler.runUntil(floors * 500L);
+    for (Elevator elevator : elevators) {
+      if (random.nextInt(4) != 0) {
+        for (int i = 0; i < 3; i++) {
+          elevator.addDestination(1 + random.nextInt(floors));
+        }
+      }
+    }
+    scheduler.runUntil(floors * 500L + 1500);
+
+    requests = new PickupRequest[queueDepth];
+    for (int i = 0; i < queueDepth; i++) {
+      int floor = 1 + random.nextInt(floors);
+      Elevator.Direction direction = floor == floors || (floor > 1 && random.nextBoolean())
+          ? Elevator.Direction.DOWN : Elevator.Direction.UP;
+      requests[i] = new PickupRequest(floor, direction, random.nextInt(1000));
+      // Queued in the owning controller's table, where each round plans them
+      ElevatorController owner = sharded == null ? controllers.get(0) : sharded.shardFor(floor, 0);
+      owner.adoptPickup(requests[i]);
+    }
+  }
+
+  @Override
+  public int dispatchRound() {
+    int assigned = 0;
+    for (ElevatorController controller : controllers) {
+      assigned += controller.planDispatch();
+    }
+    return assigned;
+  }
+
+  @Override
+  public int routeCall() {
+    PickupRequest request = requests[next++ % requests.length];
+    ElevatorController owner = sharded == null ? controllers.get(0) : sharded.shardFor(request.getFloor(), 0);
+    return owner.getElevators().size();
+  }
+}
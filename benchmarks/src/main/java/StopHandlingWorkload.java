@@ -0,0 +1,85 @@
+import java.util.*;
+
+public class StopHandlingWorkload extends benchmarks.StopHandlingBenchmark.Workload {
+  private int floors;
+  private Passenger[] riders;
+  private Elevator elevator;
+  private BitSet destinationBits;
+  private Set<Integer> legacyDestinations;
+  private List<Passenger> legacyPassengers;
+
+  @Override
+  public void setup(int floors) {
+    Random random = new Random(1);
+    this.floors = floors;
+    elevator = new Elevator(1, BuildingConfig.uniform(floors, 1).getCars().get(0), new SimulationScheduler(),
+        BenchmarkSupport.NO_LISTENER);
+    riders = new Passenger[elevator.getCapacity()];
+    destinationBits = new BitSet(floors + 1);
+    legacyDestinations = new TreeSet<>();
+    legacyPassengers = new ArrayList<>();
+    for (int i = 0; i < riders.length; i++) {
+      riders[i] = new Passenger(1, 2 + random.nextInt(floors - 1), 0);
+      destinationBits.set(riders[i].getDestinationFloor());
+      legacyDestinations.add(riders[i].getDestinationFloor());
+    }
+  }
+
+  @Override
+  public int legacyStopHandling() {
+    Set<Integer> destinations = new TreeSet<>();
+    for (Passenger p : riders) {
+      legacyPassengers.add(p);
+      destinations.add(p.getDestinationFloor());
+    }
+    int dropped = 0;
+    for (int floor = 2; floor <= floors; floor++) {
+      if (destinations.contains(floor)) {
+        destinations.remove(floor);
+        List<Passenger> toRemove = new ArrayList<>();
+        for (Passenger p : legacyPassengers) {
+          if (p.getDestinationFloor() == floor) {
+            toRemove.add(p);
+            p.arrive();
+          }
+        }
+        legacyPassengers.removeAll(toRemove);
+        dropped += toRemove.size();
+      }
+    }
+    return dropped;
+  }
+
+  @Override
+  public int bucketStopHandling() {
+    for (Passenger p : riders) {
+      elevator.addPassenger(p);
+    }
+    int dropped = 0;
+    elevator.getLock().lock();
+    try {
+      for (int floor = 2; floor <= floors; floor++) {
+        dropped += elevator.dropOffAt(floor);
+      }
+    } finally {
+      elevator.getLock().unlock();
+    }
+    elevator.deliverAlighted();
+    return dropped;
+  }
+
+  @Override
+  public int legacyNextDestination(int currentFloor) {
+    for (int floor : legacyDestinations) {
+      if (floor >= currentFloor) {
+        return floor;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public int bitsetNextDestination(int currentFloor) {
+    return destinationBits.nextSetBit(currentFloor);
+  }
+}
@@ -0,0 +1,74 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Cost of the dispatcher's per-request decisions as the fleet and building grow.
+// Run with -prof gc to report the allocation rate next to the throughput.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+  public abstract static class Workload {
+    public abstract void setup(int elevators, int floors, int queueDepth);
+
+    // One dispatch round over the whole queue, returns the number of requests assigned
+    public abstract int planDispatch();
+
+    public abstract boolean canPickup();
+
+    public abstract int getNextDestination();
+
+    // Offers queueDepth requests to a pickup queue and drains it in order
+    public abstract int orderPickupQueue();
+
+    // The same calls through the controller's hall-call table: open or merge each, then
+    // take them oldest first as a dispatch round does
+    public abstract int orderHallCallTable();
+  }
+
+  @Param({"3", "24", "128", "512"})
+  public int elevators;
+
+  @Param({"10", "60", "200"})
+  public int floors;
+
+  @Param({"1", "64", "1024"})
+  public int queueDepth;
+
+  private Workload workload;
+
+  @Setup
+  public void setup() {
+    workload = Workloads.create("DispatchWorkload", Workload.class);
+    workload.setup(elevators, floors, queueDepth);
+  }
+
+  @Benchmark
+  public int planDispatch() {
+    return workload.planDispatch();
+  }
+
+  @Benchmark
+  public boolean canPickup() {
+    return workload.canPickup();
+  }
+
+  @Benchmark
+  public int getNextDestination() {
+    return workload.getNextDestination();
+  }
+
+  @Benchmark
+  public int orderPickupQueue() {
+    return workload.orderPickupQueue();
+  }
+
+  @Benchmark
+  public int orderHallCallTable() {
+    return workload.orderHallCallTable();
+  }
+}
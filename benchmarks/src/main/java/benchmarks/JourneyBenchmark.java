@@ -0,0 +1,52 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Time for a burst of concurrent passengers, each on its own thread, to call a car, wait
+// for it, board and ride to their floor on a real-time controller. Cars are fast and roomy
+// so threads dominate. The build targets Java 17, which has no virtual threads, so only
+// platform threads run by default. To compare them with virtual threads, run the jar on
+// Java 21 or later with -p threads=platform,virtual; the jar itself needs no rebuild, since
+// ThreadMode finds virtual threads at run time. Asked for on an older JVM, the virtual
+// rows fail rather than quietly measuring platform threads.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xss256k")
+public class JourneyBenchmark {
+  public abstract static class Workload {
+    public abstract void setup(int passengers, String threads);
+
+    // Starts every journey and returns once all passengers have arrived
+    public abstract int run() throws InterruptedException;
+
+    public abstract void tearDown();
+  }
+
+  @Param({"1000", "10000", "100000"})
+  public int passengers;
+
+  @Param({"platform"})
+  public String threads;
+
+  private Workload workload;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+    workload = Workloads.create("JourneyWorkload", Workload.class);
+    workload.setup(passengers, threads);
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    workload.tearDown();
+  }
+
+  @Benchmark
+  public int journeys() throws InterruptedException {
+    return workload.run();
+  }
+}
@@ -0,0 +1,55 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Dispatch throughput against fleet size, for one controller over every car (carsPerShard
+// 0) and for a ShardedController with that many cars per shard. Scores are hall calls
+// dispatched per microsecond: one round over the same queue, split by shard when sharded.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShardedDispatchBenchmark {
+  private static final int QUEUE_DEPTH = 1024;
+
+  public abstract static class Workload {
+    public abstract void setup(int elevators, int floors, int carsPerShard, int queueDepth);
+
+    // One dispatch round over every queued call, returns the number assigned
+    public abstract int dispatchRound();
+
+    // Finds the shard owning the next call, returns its car count
+    public abstract int routeCall();
+  }
+
+  @Param({"32", "128", "512", "2048"})
+  public int elevators;
+
+  @Param({"200"})
+  public int floors;
+
+  @Param({"0", "16"})
+  public int carsPerShard;
+
+  private Workload workload;
+
+  @Setup
+  public void setup() {
+    workload = Workloads.create("ShardedDispatchWorkload", Workload.class);
+    workload.setup(elevators, floors, carsPerShard, QUEUE_DEPTH);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(QUEUE_DEPTH)
+  public int dispatchRound() {
+    return workload.dispatchRound();
+  }
+
+  @Benchmark
+  public int routeCall() {
+    return workload.routeCall();
+  }
+}
@@ -0,0 +1,64 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Compares the old stop handling (TreeSet destinations, one ArrayList of riders,
+// removeAll on every stop) with Elevator's destination bitset and per-floor buckets.
+// Each sweep boards a full car and stops at every floor on the way up.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StopHandlingBenchmark {
+  public abstract static class Workload {
+    public abstract void setup(int floors);
+
+    public abstract int legacyStopHandling();
+
+    public abstract int bucketStopHandling();
+
+    public abstract int legacyNextDestination(int currentFloor);
+
+    public abstract int bitsetNextDestination(int currentFloor);
+  }
+
+  @Param({"10", "60", "200"})
+  public int floors;
+
+  private Workload workload;
+
+  @Setup
+  public void setup() {
+    workload = Workloads.create("StopHandlingWorkload", Workload.class);
+    workload.setup(floors);
+  }
+
+  @Benchmark
+  public int legacyStopHandling() {
+    return workload.legacyStopHandling();
+  }
+
+  @Benchmark
+  public int bucketStopHandling() {
+    return workload.bucketStopHandling();
+  }
+
+  // Next destination above the car from every floor, as done by getNextDestination
+  @Benchmark
+  public void legacyNextDestination(Blackhole blackhole) {
+    for (int current = 1; current <= floors; current++) {
+      blackhole.consume(workload.legacyNextDestination(current));
+    }
+  }
+
+  @Benchmark
+  public void bitsetNextDestination(Blackhole blackhole) {
+    for (int current = 1; current <= floors; current++) {
+      blackhole.consume(workload.bitsetNextDestination(current));
+    }
+  }
+}
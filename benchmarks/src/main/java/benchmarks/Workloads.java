@@ -0,0 +1,17 @@
+package benchmarks;
+
+// JMH rejects benchmarks in the default package, and code in a named package cannot
+// refer to the simulator's default-package classes. Each benchmark therefore declares
+// an abstract workload, implemented in the default package and loaded here by name.
+final class Workloads {
+  private Workloads() {
+  }
+
+  static <T> T create(String className, Class<T> type) {
+    try {
+      return type.cast(Class.forName(className).getDeclaredConstructor().newInstance());
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Cannot load workload " + className, e);
+    }
+  }
+}